@@ -15,15 +15,26 @@ public class Main {
 		do {
 			System.out.printf("\n%1$s TURN! \n%2$s%n", game.getTurnColor(), game.printBoard());
 			
-			System.out.print("Enter Move: ");
+			System.out.print("Enter Move (or undo/redo): ");
 			String move = input.nextLine();
 
+			// Moves can be taken back and played again
+			if(move.equals("undo") || move.equals("redo")) {
+				if(!(move.equals("undo") ? game.undo() : game.redo())) {
+					System.err.println("Nothing to " + move);
+				}
+				continue;
+			}
+
 			try {
 				game.makeMove(move);
 				
 				if(game.isCheckmate()) {
 					System.out.printf("\n%s was checkmated!", game.getTurnColor());
 					isRunning = false;
+				} else if(game.isDraw()) {
+					System.out.println("\nDraw!");
+					isRunning = false;
 				}
 			} catch(ChessException e) {
 				System.err.println(e.getMessage());
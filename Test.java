@@ -1,10 +1,11 @@
 import chess.ChessGame;
 import chess.ChessException;
-import java.io.File;
-import java.io.FileNotFoundException;
+import chess.CorpusValidator;
+import chess.PgnReader;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Scanner;
 
 public class Test {
     // Returns true if the game is valid 
@@ -14,7 +15,7 @@ public class Test {
         String[] moves = gameMoves.split(" ");
 
         for(String move : moves) {
-            if(move.equals("0-1") || move.equals("1-0") || move.trim().equals(".")) {
+            if(move.isEmpty() || move.equals("0-1") || move.equals("1-0") || move.trim().equals(".")) {
                 continue;
             }
 
@@ -35,53 +36,34 @@ public class Test {
         return true;
     }
 
+    // Returns the moves of every game in the file (one string per game, moves separated by spaces)
     public static List<String> getGames(String filename) {
-        File file = new File(filename);
-        Scanner reader;
         List<String> list = new LinkedList<>();
-        try {
-            reader = new Scanner(file);
-            boolean start = false;
-            StringBuilder game = new StringBuilder();
-
-
-            while(reader.hasNextLine()) {
-                String line = reader.nextLine();
 
-                if(line.indexOf("1.") != -1) {
-                    start = true;
-                }
-
-                if(line.trim().equals("")) {
-                    start = false;
-                    list.add(game.toString());
-                    game = new StringBuilder();
-                }
-
-                if(start) {
-                    game.append(line.replace("+", ""));
-                    game.append(" ");
-                }
+        try (PgnReader reader = new PgnReader(Paths.get(filename))) {
+            while (reader.hasNext()) {
+                list.add(String.join(" ", reader.next().getMoves()));
             }
-
-            reader.close();
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
         }
         return list;
     }
 
+    // Returns the indices of the games that could not be replayed (games are replayed on all cores)
     public static List<Integer> checkApplication(String fileName) {
-        List<String> games = getGames(fileName);
         List<Integer> list = new LinkedList<>();
-        int index = 1;
 
-        for(String game : games) {
-            if(!validateGame(game)) {
-                list.add(index);
+        try {
+            CorpusValidator.Report report = CorpusValidator.validate(Paths.get(fileName),
+                    Runtime.getRuntime().availableProcessors());
+            for(CorpusValidator.Failure failure : report.getFailures()) {
+                list.add(failure.getGameIndex());
             }
-            index++;
+            System.out.println(report);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
 
         return list;
@@ -0,0 +1,229 @@
+package chess;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Microbenchmarks for the move validation hot paths. Each benchmark is warmed
+ * up, then timed over several iterations, and reports the average time and the
+ * bytes allocated per operation (from the thread allocation counter).
+ *
+ * Usage: java chess.Benchmark [--warmup N] [--iterations N] [--time ms] [name filter]
+ */
+public class Benchmark {
+    // Games replayed by the SAN and replay benchmarks (taken from Korchnoi.txt)
+    static final String[] GAMES = {
+            "d4 e6 g3 f5 Bg2 Nf6 Nf3 Be7 O-O O-O c4 d6 Nc3 Qe8 Qc2 Qh5 b3 Nc6 Bb2 Bd7 a3 Rae8 d5 Nd8 Nd4 e5 Ndb5 Nf7 "
+                    + "Nxc7 Rc8 Ne6 Bxe6 dxe6 Ng5 Nd5 Nxd5 Bxd5 f4 f3 fxg3 hxg3 Qh3 Kf2 Nxf3 Ke3 Nd4 Qd1 Qxg3 Rf3 Nxf3 "
+                    + "exf3 b5 Qh1 bxc4 bxc4 Rb8 Bc3 Rb3 Kd3 Qf2 Qe1 e4 Bxe4 Rxf3 Bxf3 Qxf3 Kc2 Rxc3 Kb2 Rb3",
+            "f4 c5 Nf3 d5 g3 Nc6 Bg2 e6 O-O Bd6 Nc3 Nf6 d3 d4 Nb5 Nd5 c4 Nde7 e4 dxe3 Bxe3 a6 Nc3 Nf5 Bf2 Qe7 Nd5 "
+                    + "Qd8 Nc3 O-O Ne4 Qe7 Qe2 Rd8 g4 Nh6 Bh4 f6 g5 Ng4 h3 fxg5 Nfxg5 Nf6 Nxh7 Kxh7 Bxf6 gxf6 Qh5 Kg7 "
+                    + "Rf3 Qf7 Rg3 Kf8 Qh6 Ke8 Nxf6 Ke7 Rg7 Rf8 Nd5 Kd8 Rxf7 Rxf7 Re1 Nd4 Qg6 Rf8 Qg5 Ke8 h4 Rb8 h5 b5 "
+                    + "h6 Rb7 Nf6 Rxf6 Qxf6 Rf7 Qg6",
+            "e4 c6 Nc3 g6 Bc4 Bg7 d4 b5 Bb3 b4 Qf3 e6 Nce2 d5 Bd2 dxe4 Qxe4 Nf6 Qh4 a5 a3 bxa3 Rxa3 O-O Nf3 c5 dxc5 "
+                    + "Bb7 Ng5 h6 Nxe6 fxe6 Bxh6 Nd5 Bg5 Qc7 Bc4 Qxc5 Rh3 Rf5 Be3 Qf8 Qh7 Kf7 g4 Rf6 Bxd5 Bxd5 g5 Rf3 "
+                    + "O-O Rxh3 Qxh3 Nd7 Nf4 Qh8 Qg3 Be5 Rd1 Rc8 Qg4 Bxf4 Qxf4 Ke8 h4 Qxb2 Bd4 Qxc2 Re1 Qd3 h5 Qh3 Qh2 "
+                    + "Qg4 Qg3 Qxd4",
+            "e4 c5 d4 cxd4 Nf3 d6 Nxd4 Nf6 f3 e5 Bb5 Nbd7 Nf5 a6 Bxd7 Qxd7 Nc3 d5 Bg5 dxe4 Bxf6 gxf6 fxe4 Qxd1 Rxd1 "
+                    + "Bxf5 Nd5 Bxe4 Nxf6 Ke7 Nxe4 f5 Ng3 Ke6 Rf1 f4 Ne4 Be7 Ke2 Rac8 Rd2 b5 Kf3 Rc7 Re1 Rhc8 Ree2 Bb4 "
+                    + "c3 Bc5 Rd1 h5 a4 bxa4 Ra1 Rd7 Nxc5 Rxc5 Rxa4 a5 Rxf4 Rf7 Rxf7 Kxf7 g4 hxg4 Kxg4 Kf6 h4 Rc4 Kg3 "
+                    + "a4 Re3 a3 bxa3 Ra4 Rf3 Kg6 Re3 Rxa3 Kh3 Kf6 Rf3 Kg6 Rg3"
+    };
+
+    // One benchmark: runs a batch of operations and returns a value so the work cannot be optimized away
+    private static class Case {
+        final String name;
+        final int opsPerCall;
+        final LongSupplier body;
+
+        Case(String name, int opsPerCall, LongSupplier body) {
+            this.name = name;
+            this.opsPerCall = opsPerCall;
+            this.body = body;
+        }
+    }
+
+    private static long sink; // Results of every call end up here
+
+    public static void main(String[] args) {
+        int warmup = 3;
+        int iterations = 5;
+        long timeMillis = 1000;
+        String filter = "";
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    timeMillis = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    filter = args[i];
+                    break;
+            }
+        }
+
+        System.out.printf("%-20s %14s %12s %14s %12s%n", "Benchmark", "ns/op", "error", "bytes/op", "MB/s");
+        for (Case c : getCases()) {
+            if (c.name.contains(filter)) {
+                run(c, warmup, iterations, timeMillis);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    // Returns every benchmark, each with its own fixed positions
+    private static List<Case> getCases() {
+        List<Case> cases = new ArrayList<>();
+        List<String[]> games = new ArrayList<>();
+        int plies = 0;
+        for (String game : GAMES) {
+            games.add(game.split(" "));
+            plies += games.get(games.size() - 1).length;
+        }
+
+        // A middlegame position (after 20 moves of the first game) with every move of the side to move
+        ChessGame middlegame = replay(games.get(0), 40);
+        Position position = middlegame.getPosition();
+        List<int[]> candidates = new ArrayList<>();
+        for (int sq = 0; sq < 64; sq++) {
+            ChessPiece piece = position.getBoard().getPiece(sq >> 3, sq & 7);
+            if (piece == null || piece.getColor() != position.getTurnColor()) {
+                continue;
+            }
+            long targets = piece.getTargets(position, sq >> 3, sq & 7);
+            for (int eSq = 0; eSq < 64; eSq++) {
+                if ((targets & (1L << eSq)) != 0) {
+                    candidates.add(new int[] { sq >> 3, sq & 7, eSq >> 3, eSq & 7 });
+                }
+            }
+        }
+
+        // SAN parsing and making the move, on the moves of the first game
+        String[] sanMoves = games.get(0);
+        cases.add(new Case("makeMove", sanMoves.length, () -> {
+            ChessGame game = new ChessGame();
+            for (String move : sanMoves) {
+                game.makeMove(move);
+            }
+            return game.getPositionKey();
+        }));
+
+        cases.add(new Case("isValidMove", candidates.size(), () -> {
+            long valid = 0;
+            for (int[] m : candidates) {
+                try {
+                    if (MoveValidator.isValidMove(position, position.getTurnColor(), m[0], m[1], m[2], m[3])) {
+                        valid++;
+                    }
+                } catch (ChessException e) {
+                    valid--;
+                }
+            }
+            return valid;
+        }));
+
+        cases.add(new Case("getMoveStatus", candidates.size(), () -> {
+            long valid = 0;
+            for (int[] m : candidates) {
+                if (MoveValidator.getMoveStatus(position, position.getTurnColor(), m[0], m[1], m[2], m[3])
+                        .isLegal()) {
+                    valid++;
+                }
+            }
+            return valid;
+        }));
+
+        cases.add(new Case("isCheck", 1, () -> {
+            ChessPiece.Color color = position.getTurnColor();
+            return ChessGame.isCheck(position.getBoard(), color, position.getKingRow(color),
+                    position.getKingCol(color)) ? 1 : 0;
+        }));
+
+        // Move generation as ChessGame.isCheckmate does on a cache miss, so it is not hidden by the move cache
+        cases.add(new Case("isCheckmate", 1,
+                () -> MoveValidator.hasLegalMove(position, position.getTurnColor()) ? 0 : 1));
+
+        // ChessGame.isCheckmate as games call it: after the first calls, a hit of the shared move cache
+        cases.add(new Case("isCheckmate (cached)", 1, () -> middlegame.isCheckmate() ? 1 : 0));
+
+        int[] copyMove = candidates.get(0);
+        cases.add(new Case("getCopyBoard", 1, () -> ChessGame
+                .getCopyBoard(position, copyMove[0], copyMove[1], copyMove[2], copyMove[3]).getPieceKey()));
+
+        cases.add(new Case("replay", plies, () -> {
+            long key = 0;
+            for (String[] game : games) {
+                key ^= replay(game, game.length).getPositionKey();
+            }
+            return key;
+        }));
+
+        return cases;
+    }
+
+    private static ChessGame replay(String[] moves, int count) {
+        ChessGame game = new ChessGame();
+        for (int i = 0; i < count; i++) {
+            game.makeMove(moves[i]);
+        }
+        return game;
+    }
+
+    private static void run(Case c, int warmup, int iterations, long timeMillis) {
+        for (int i = 0; i < warmup; i++) {
+            measure(c, timeMillis);
+        }
+
+        double[] nanosPerOp = new double[iterations];
+        double bytesPerOp = 0;
+        double bytesPerSecond = 0;
+        for (int i = 0; i < iterations; i++) {
+            double[] result = measure(c, timeMillis);
+            nanosPerOp[i] = result[0];
+            bytesPerOp += result[1] / iterations;
+            bytesPerSecond += result[1] / result[0] * 1e9 / iterations;
+        }
+
+        double mean = 0;
+        for (double value : nanosPerOp) {
+            mean += value / iterations;
+        }
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean) / Math.max(iterations - 1, 1);
+        }
+
+        System.out.printf("%-20s %14.1f %12.1f %14.1f %12.1f%n", c.name, mean, Math.sqrt(variance), bytesPerOp,
+                bytesPerSecond / (1024 * 1024));
+    }
+
+    // Runs the benchmark for the given time and returns [ns/op, bytes/op]
+    private static double[] measure(Case c, long timeMillis) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long deadline = System.nanoTime() + timeMillis * 1_000_000;
+        long calls = 0;
+
+        long startBytes = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long end;
+        do {
+            sink += c.body.getAsLong();
+            calls++;
+        } while ((end = System.nanoTime()) < deadline);
+        long bytes = threads.getCurrentThreadAllocatedBytes() - startBytes;
+
+        double ops = (double) calls * c.opsPerCall;
+        return new double[] { (end - start) / ops, bytes / ops };
+    }
+}
@@ -0,0 +1,117 @@
+package chess;
+
+// Static helpers for 64-bit board sets
+// NOTE: Square index is row * 8 + col, so bit 0 is a8 and bit 63 is h1 (same layout as the ChessPiece[][] board)
+final class Bitboards {
+    static final long[] KNIGHT_ATTACKS = new long[64];
+    static final long[] KING_ATTACKS = new long[64];
+    static final long[][] PAWN_ATTACKS = new long[2][64]; // [WHITE/BLACK][square]
+    static final long FILE_A = 0x0101010101010101L; // Shift left by col for the other files
+    static final long ROW_0 = 0xFFL; // Rank 8, shift left by row * 8 for the other rows
+
+    // Rays in every direction, used for sliding pieces
+    // Directions with a positive step (towards h1) find their first blocker with the lowest bit,
+    // the others with the highest bit
+    private static final int[][] DIRECTIONS = {
+            { -1, 0 }, { 1, 0 }, { 0, -1 }, { 0, 1 }, // Rook directions
+            { -1, -1 }, { -1, 1 }, { 1, -1 }, { 1, 1 } // Bishop directions
+    };
+    private static final long[][] RAYS = new long[8][64];
+
+    // For two squares on the same row, column or diagonal: the squares strictly between them (BETWEEN)
+    // and the whole line through both, edge to edge (LINE). Empty for squares that are not aligned
+    static final long[][] BETWEEN = new long[64][64];
+    static final long[][] LINE = new long[64][64];
+
+    static {
+        int[][] knightJumps = { { -2, -1 }, { -2, 1 }, { -1, -2 }, { -1, 2 }, { 1, -2 }, { 1, 2 }, { 2, -1 }, { 2, 1 } };
+
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3, col = sq & 7;
+
+            for (int[] jump : knightJumps) {
+                KNIGHT_ATTACKS[sq] |= bit(row + jump[0], col + jump[1]);
+            }
+
+            for (int[] dir : DIRECTIONS) {
+                KING_ATTACKS[sq] |= bit(row + dir[0], col + dir[1]);
+            }
+
+            // White pawns move towards row 0, black pawns towards row 7
+            PAWN_ATTACKS[0][sq] = bit(row - 1, col - 1) | bit(row - 1, col + 1);
+            PAWN_ATTACKS[1][sq] = bit(row + 1, col - 1) | bit(row + 1, col + 1);
+
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int r = row + DIRECTIONS[d][0], c = col + DIRECTIONS[d][1];
+                while (r >= 0 && r < 8 && c >= 0 && c < 8) {
+                    RAYS[d][sq] |= 1L << square(r, c);
+                    r += DIRECTIONS[d][0];
+                    c += DIRECTIONS[d][1];
+                }
+            }
+        }
+
+        for (int a = 0; a < 64; a++) {
+            for (int b = 0; b < 64; b++) {
+                int dRow = (b >> 3) - (a >> 3), dCol = (b & 7) - (a & 7);
+                if (a == b) {
+                    continue;
+                }
+
+                // Each square only blocks the other, so the two views overlap between them
+                if (dRow == 0 || dCol == 0) {
+                    BETWEEN[a][b] = rookAttacks(a, 1L << b) & rookAttacks(b, 1L << a);
+                    LINE[a][b] = (rookAttacks(a, 0) & rookAttacks(b, 0)) | (1L << a) | (1L << b);
+                } else if (Math.abs(dRow) == Math.abs(dCol)) {
+                    BETWEEN[a][b] = bishopAttacks(a, 1L << b) & bishopAttacks(b, 1L << a);
+                    LINE[a][b] = (bishopAttacks(a, 0) & bishopAttacks(b, 0)) | (1L << a) | (1L << b);
+                }
+            }
+        }
+    }
+
+    private Bitboards() {
+    }
+
+    // Returns the square index of a row and column
+    static int square(int row, int col) {
+        return (row << 3) | col;
+    }
+
+    // Returns a set with only the given square, or an empty set if the square is off the board
+    static long bit(int row, int col) {
+        if (row < 0 || row >= 8 || col < 0 || col >= 8) {
+            return 0L;
+        }
+        return 1L << square(row, col);
+    }
+
+    // Returns every square a rook on sq sees, stopping at (and including) the first blocker
+    static long rookAttacks(int sq, long occupancy) {
+        return rayAttacks(0, sq, occupancy) | rayAttacks(1, sq, occupancy)
+                | rayAttacks(2, sq, occupancy) | rayAttacks(3, sq, occupancy);
+    }
+
+    // Returns every square a bishop on sq sees, stopping at (and including) the first blocker
+    static long bishopAttacks(int sq, long occupancy) {
+        return rayAttacks(4, sq, occupancy) | rayAttacks(5, sq, occupancy)
+                | rayAttacks(6, sq, occupancy) | rayAttacks(7, sq, occupancy);
+    }
+
+    static long queenAttacks(int sq, long occupancy) {
+        return rookAttacks(sq, occupancy) | bishopAttacks(sq, occupancy);
+    }
+
+    private static long rayAttacks(int dir, int sq, long occupancy) {
+        long ray = RAYS[dir][sq];
+        long blockers = ray & occupancy;
+
+        if (blockers == 0) {
+            return ray;
+        }
+
+        int step = DIRECTIONS[dir][0] * 8 + DIRECTIONS[dir][1];
+        int blocker = (step > 0) ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers);
+        return ray ^ RAYS[dir][blocker];
+    }
+}
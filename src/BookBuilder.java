@@ -0,0 +1,184 @@
+package chess;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds an opening book (see OpeningBook) from PGN files. The first plies of
+ * every game are replayed through ChessGame, and for every position reached
+ * the moves played from it are counted together with the results of those
+ * games. Games stop contributing at their first invalid move.
+ *
+ * Usage: java chess.BookBuilder book.bin games.pgn... [--plies N] [--min N]
+ */
+public class BookBuilder {
+    private static final int WIN = 0, DRAW = 1, LOSS = 2, UNKNOWN = 3;
+
+    private final int maxPly;
+
+    // Statistics per position key and packed move: [count, wins, draws, losses]
+    private final Map<Long, Map<Integer, int[]>> positions = new HashMap<>();
+    private int games;
+
+    /**
+     * Creates a builder
+     *
+     * @param maxPly the number of plies of each game added to the book
+     */
+    public BookBuilder(int maxPly) {
+        this.maxPly = maxPly;
+    }
+
+    /**
+     * Adds the games of a PGN file
+     *
+     * @param pgn the PGN file
+     * @throws IOException if the file cannot be read
+     */
+    public void addGames(Path pgn) throws IOException {
+        try (PgnReader reader = new PgnReader(pgn)) {
+            while (reader.hasNext()) {
+                addGame(reader.next());
+            }
+        }
+    }
+
+    // Adds the first plies of a game
+    void addGame(PgnGame pgnGame) {
+        games++;
+        String result = pgnGame.getResult();
+        ChessGame game = new ChessGame();
+
+        int ply = 0;
+        for (String san : pgnGame.getMoves()) {
+            if (ply++ == maxPly) {
+                break;
+            }
+
+            long key = game.getPositionKey();
+            boolean whiteMoves = game.getTurnColor() == ChessPiece.Color.WHITE;
+            int move;
+            try {
+                move = game.playMove(san);
+            } catch (ChessException e) {
+                break;
+            }
+
+            int[] stats = positions.computeIfAbsent(key, k -> new HashMap<>(4)).computeIfAbsent(move,
+                    m -> new int[4]);
+            stats[0]++;
+            int outcome = getOutcome(result, whiteMoves);
+            if (outcome != UNKNOWN) {
+                stats[1 + outcome]++;
+            }
+        }
+    }
+
+    // Returns the outcome of a game for the side to move
+    private static int getOutcome(String result, boolean whiteMoves) {
+        if ("1/2-1/2".equals(result)) {
+            return DRAW;
+        } else if ("1-0".equals(result)) {
+            return whiteMoves ? WIN : LOSS;
+        } else if ("0-1".equals(result)) {
+            return whiteMoves ? LOSS : WIN;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Writes the book, sorted by position key and move
+     *
+     * @param path     the book file
+     * @param minCount the number of games a move needs to be kept
+     * @return the number of entries written
+     * @throws IOException if the file cannot be written
+     */
+    public int write(Path path, int minCount) throws IOException {
+        // Every (key, move) pair, sorted by key then move
+        long[][] entries = new long[countEntries(minCount)][];
+        int n = 0;
+        for (Map.Entry<Long, Map<Integer, int[]>> position : positions.entrySet()) {
+            for (Map.Entry<Integer, int[]> move : position.getValue().entrySet()) {
+                if (move.getValue()[0] >= minCount) {
+                    entries[n++] = new long[] { position.getKey(), move.getKey() };
+                }
+            }
+        }
+        Arrays.sort(entries, (a, b) -> (a[0] != b[0]) ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeInt(entries.length);
+            out.writeInt(maxPly);
+
+            for (long[] entry : entries) {
+                int[] stats = positions.get(entry[0]).get((int) entry[1]);
+                out.writeLong(entry[0]);
+                out.writeShort((int) entry[1]);
+                out.writeShort(0);
+                for (int value : stats) {
+                    out.writeInt(value);
+                }
+            }
+        }
+        return entries.length;
+    }
+
+    public int getGameCount() {
+        return games;
+    }
+
+    private int countEntries(int minCount) {
+        int count = 0;
+        for (Map<Integer, int[]> moves : positions.values()) {
+            for (int[] stats : moves.values()) {
+                if (stats[0] >= minCount) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java chess.BookBuilder book.bin games.pgn... [--plies N] [--min N]");
+            return;
+        }
+
+        int plies = 20;
+        int minCount = 1;
+        int fileCount = args.length;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--plies") || args[i].equals("--min")) {
+                fileCount = Math.min(fileCount, i);
+                int value = Integer.parseInt(args[i + 1]);
+                if (args[i++].equals("--plies")) {
+                    plies = value;
+                } else {
+                    minCount = value;
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        BookBuilder builder = new BookBuilder(plies);
+        for (int i = 1; i < fileCount; i++) {
+            builder.addGames(Paths.get(args[i]));
+        }
+        int entries = builder.write(Paths.get(args[0]), minCount);
+
+        System.out.printf("%d games, %d entries written in %.3f s%n", builder.getGameCount(), entries,
+                (System.nanoTime() - start) / 1e9);
+    }
+}
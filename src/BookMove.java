@@ -0,0 +1,59 @@
+package chess;
+
+/**
+ * A move of the opening book with the results of the games in which it was
+ * played. Wins and losses are counted for the side playing the move.
+ */
+public class BookMove {
+    private final int move; // Packed move (see Move)
+    private final int count;
+    private final int wins;
+    private final int draws;
+    private final int losses;
+
+    BookMove(int move, int count, int wins, int draws, int losses) {
+        this.move = move;
+        this.count = count;
+        this.wins = wins;
+        this.draws = draws;
+        this.losses = losses;
+    }
+
+    // Returns the move in coordinate notation (e.g. e2e4)
+    public String getMove() {
+        return Move.toString(move);
+    }
+
+    int getPackedMove() {
+        return move;
+    }
+
+    // Number of games in which the move was played (including games without a result)
+    public int getCount() {
+        return count;
+    }
+
+    public int getWins() {
+        return wins;
+    }
+
+    public int getDraws() {
+        return draws;
+    }
+
+    public int getLosses() {
+        return losses;
+    }
+
+    // Returns the average result for the side playing the move (1 win, 0.5 draw, 0 loss), 0.5 without results
+    public double getScore() {
+        int games = wins + draws + losses;
+        return (games == 0) ? 0.5 : (wins + draws / 2.0) / games;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d games (+%d =%d -%d) %.1f%%", getMove(), count, wins, draws, losses,
+                getScore() * 100);
+    }
+}
@@ -1,18 +1,67 @@
 package chess;
 
+import java.util.Arrays;
+
 // The ChessBoard class implements a chess board that holds all the chess pieces
+// NOTE: Besides the ChessPiece[][] grid, the board keeps one 64-bit set per piece type and color (see Bitboards)
+// Every change to the grid has to go through setPiece/removePiece/movePiece so both views stay in sync
 class ChessBoard {
     private final ChessPiece[][] board;
     private final int BOARD_SIZE = 8; // DO NOT CHANGE. If it changes, everything breaks
 
+    // Order of the piece types inside the bitboard arrays
+    static final String PIECE_TYPES = "pNBRQK";
+
+    // pieceSets[0-5] are the white pawns, knights, bishops, rooks, queens and king; pieceSets[6-11] are black
+    private final long[] pieceSets;
+    private long whiteOccupancy;
+    private long blackOccupancy;
+
+    // XOR of the Zobrist keys of every piece on the board, updated with each change
+    private long pieceKey;
+
+    // Material and piece-square values of every piece (White minus Black) and the game phase, updated with each
+    // change (see Evaluation)
+    private int middlegameScore;
+    private int endgameScore;
+    private int phase;
+
     // Creates and prepares the chess board for a new game
     ChessBoard() {
         board = new ChessPiece[BOARD_SIZE][BOARD_SIZE];
+        pieceSets = new long[12];
         resetBoard();
     }
 
+    // Copy constructor (for deep copies)
+    ChessBoard(ChessBoard other) {
+        board = new ChessPiece[BOARD_SIZE][BOARD_SIZE];
+        for (int row = 0; row < BOARD_SIZE; row++) {
+            for (int col = 0; col < BOARD_SIZE; col++) {
+                if (other.board[row][col] != null) {
+                    board[row][col] = (ChessPiece) other.board[row][col].clone();
+                }
+            }
+        }
+
+        pieceSets = other.pieceSets.clone();
+        whiteOccupancy = other.whiteOccupancy;
+        blackOccupancy = other.blackOccupancy;
+        pieceKey = other.pieceKey;
+        middlegameScore = other.middlegameScore;
+        endgameScore = other.endgameScore;
+        phase = other.phase;
+    }
+
+    // Returns the index of the bitboard for the given piece
+    static int pieceIndex(ChessPiece.Color color, char symbol) {
+        return (color == ChessPiece.Color.WHITE ? 0 : 6) + PIECE_TYPES.indexOf(symbol);
+    }
+
     // Refreshes the board to the starting position
     void resetBoard() {
+        clearBoard();
+
         for(int i = 0; i < BOARD_SIZE; i++) {
             if(i > 1 && i < 6) {
                 // Empty space
@@ -23,27 +72,211 @@ class ChessBoard {
             for(int j = 0; j < BOARD_SIZE; j++) {
                 if(i == 1 || i == 6) {
                     // Pawn
-                    board[i][j] = new Pawn(color);
+                    setPiece(i, j, new Pawn(color));
                 } else if(j == 0 || j == 7) {
                     // Rook
-                    board[i][j] = new Rook(color);
+                    setPiece(i, j, new Rook(color));
                 } else if(j == 1 || j == 6) {
                     // Knight
-                    board[i][j] = new Knight(color);
+                    setPiece(i, j, new Knight(color));
                 } else if(j == 2 || j == 5) {
                     // Bishop
-                    board[i][j] = new Bishop(color);
+                    setPiece(i, j, new Bishop(color));
                 } else if(j == 3) {
                     // Queen
-                    board[i][j] = new Queen(color);
+                    setPiece(i, j, new Queen(color));
                 } else {
                     // King
-                    board[i][j] = new King(color);
+                    setPiece(i, j, new King(color));
                 }
             }
         }
     }
 
+    // Removes every piece from the board
+    void clearBoard() {
+        for (ChessPiece[] row : board) {
+            Arrays.fill(row, null);
+        }
+        Arrays.fill(pieceSets, 0L);
+        whiteOccupancy = 0L;
+        blackOccupancy = 0L;
+        pieceKey = 0L;
+        middlegameScore = 0;
+        endgameScore = 0;
+        phase = 0;
+    }
+
+    // Puts a piece on an empty square
+    void setPiece(int row, int col, ChessPiece piece) {
+        int sq = Bitboards.square(row, col);
+        long bit = 1L << sq;
+
+        board[row][col] = piece;
+        pieceSets[piece.PIECE_INDEX] |= bit;
+        pieceKey ^= Zobrist.PIECES[piece.PIECE_INDEX][sq];
+        middlegameScore += Evaluation.MG_SCORES[piece.PIECE_INDEX][sq];
+        endgameScore += Evaluation.EG_SCORES[piece.PIECE_INDEX][sq];
+        phase += Evaluation.PHASE_WEIGHTS[piece.PIECE_INDEX % 6];
+        if (piece.getColor() == ChessPiece.Color.WHITE) {
+            whiteOccupancy |= bit;
+        } else {
+            blackOccupancy |= bit;
+        }
+    }
+
+    // Removes the piece on a square and returns it (null if the square is empty)
+    ChessPiece removePiece(int row, int col) {
+        ChessPiece piece = board[row][col];
+        if (piece == null) {
+            return null;
+        }
+
+        int sq = Bitboards.square(row, col);
+        long bit = 1L << sq;
+
+        board[row][col] = null;
+        pieceSets[piece.PIECE_INDEX] &= ~bit;
+        pieceKey ^= Zobrist.PIECES[piece.PIECE_INDEX][sq];
+        middlegameScore -= Evaluation.MG_SCORES[piece.PIECE_INDEX][sq];
+        endgameScore -= Evaluation.EG_SCORES[piece.PIECE_INDEX][sq];
+        phase -= Evaluation.PHASE_WEIGHTS[piece.PIECE_INDEX % 6];
+        if (piece.getColor() == ChessPiece.Color.WHITE) {
+            whiteOccupancy &= ~bit;
+        } else {
+            blackOccupancy &= ~bit;
+        }
+        return piece;
+    }
+
+    // Moves the piece on the start square to the end square and returns the captured piece (if any)
+    ChessPiece movePiece(int sRow, int sCol, int eRow, int eCol) {
+        ChessPiece captured = removePiece(eRow, eCol);
+        setPiece(eRow, eCol, removePiece(sRow, sCol));
+        return captured;
+    }
+
+    ChessPiece getPiece(int row, int col) {
+        return board[row][col];
+    }
+
+    // Returns the set of squares holding the given piece type and color
+    long getPieceSet(ChessPiece.Color color, char symbol) {
+        return pieceSets[pieceIndex(color, symbol)];
+    }
+
+    long getOccupancy() {
+        return whiteOccupancy | blackOccupancy;
+    }
+
+    long getOccupancy(ChessPiece.Color color) {
+        return (color == ChessPiece.Color.WHITE) ? whiteOccupancy : blackOccupancy;
+    }
+
+    // Returns the Zobrist key of the pieces on the board (see Position.getKey for the full key)
+    long getPieceKey() {
+        return pieceKey;
+    }
+
+    // Returns the middlegame material and piece-square score, White minus Black
+    int getMiddlegameScore() {
+        return middlegameScore;
+    }
+
+    // Returns the endgame material and piece-square score, White minus Black
+    int getEndgameScore() {
+        return endgameScore;
+    }
+
+    // Returns the game phase, from Evaluation.MAX_PHASE (all pieces) down to 0 (only pawns and Kings)
+    int getPhase() {
+        return phase;
+    }
+
+    // Returns true if any piece of the given color attacks the square
+    boolean isAttacked(int row, int col, ChessPiece.Color byColor) {
+        int sq = Bitboards.square(row, col);
+        int offset = (byColor == ChessPiece.Color.WHITE) ? 0 : 6;
+        long occupancy = getOccupancy();
+
+        // A pawn of byColor attacks sq if a pawn of the other color on sq would attack the pawn's square
+        long pawnAttackers = Bitboards.PAWN_ATTACKS[(byColor == ChessPiece.Color.WHITE) ? 1 : 0][sq];
+        if ((pawnAttackers & pieceSets[offset]) != 0
+                || (Bitboards.KNIGHT_ATTACKS[sq] & pieceSets[offset + 1]) != 0
+                || (Bitboards.KING_ATTACKS[sq] & pieceSets[offset + 5]) != 0) {
+            return true;
+        }
+
+        long queens = pieceSets[offset + 4];
+        return (Bitboards.bishopAttacks(sq, occupancy) & (pieceSets[offset + 2] | queens)) != 0
+                || (Bitboards.rookAttacks(sq, occupancy) & (pieceSets[offset + 3] | queens)) != 0;
+    }
+
+    // Returns the pieces of the given color that attack the square, sliders seeing through everything not in occupancy
+    long getAttackers(int sq, ChessPiece.Color byColor, long occupancy) {
+        int offset = (byColor == ChessPiece.Color.WHITE) ? 0 : 6;
+        long pawnAttackers = Bitboards.PAWN_ATTACKS[(byColor == ChessPiece.Color.WHITE) ? 1 : 0][sq];
+        long queens = pieceSets[offset + 4];
+
+        return (pawnAttackers & pieceSets[offset])
+                | (Bitboards.KNIGHT_ATTACKS[sq] & pieceSets[offset + 1])
+                | (Bitboards.KING_ATTACKS[sq] & pieceSets[offset + 5])
+                | (Bitboards.bishopAttacks(sq, occupancy) & (pieceSets[offset + 2] | queens))
+                | (Bitboards.rookAttacks(sq, occupancy) & (pieceSets[offset + 3] | queens));
+    }
+
+    // Returns every square attacked by the given color, sliders seeing through everything not in occupancy
+    long getAttacks(ChessPiece.Color color, long occupancy) {
+        int offset = (color == ChessPiece.Color.WHITE) ? 0 : 6;
+        long[] pawnAttacks = Bitboards.PAWN_ATTACKS[(color == ChessPiece.Color.WHITE) ? 0 : 1];
+        long attacks = 0;
+
+        long pieces = getOccupancy(color);
+        while (pieces != 0) {
+            int sq = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+
+            long bit = 1L << sq;
+            if ((pieceSets[offset] & bit) != 0) {
+                attacks |= pawnAttacks[sq];
+            } else if ((pieceSets[offset + 1] & bit) != 0) {
+                attacks |= Bitboards.KNIGHT_ATTACKS[sq];
+            } else if ((pieceSets[offset + 2] & bit) != 0) {
+                attacks |= Bitboards.bishopAttacks(sq, occupancy);
+            } else if ((pieceSets[offset + 3] & bit) != 0) {
+                attacks |= Bitboards.rookAttacks(sq, occupancy);
+            } else if ((pieceSets[offset + 4] & bit) != 0) {
+                attacks |= Bitboards.queenAttacks(sq, occupancy);
+            } else {
+                attacks |= Bitboards.KING_ATTACKS[sq];
+            }
+        }
+        return attacks;
+    }
+
+    // Returns the pieces of the given color that are pinned to their King (on kingSq) by an enemy slider
+    long getPinned(int kingSq, ChessPiece.Color color) {
+        int enemy = (color == ChessPiece.Color.WHITE) ? 6 : 0;
+        long queens = pieceSets[enemy + 4];
+        long occupancy = getOccupancy();
+        long pinned = 0;
+
+        // Enemy sliders on a line with the King, ignoring the pieces in between
+        long snipers = (Bitboards.rookAttacks(kingSq, 0) & (pieceSets[enemy + 3] | queens))
+                | (Bitboards.bishopAttacks(kingSq, 0) & (pieceSets[enemy + 2] | queens));
+        while (snipers != 0) {
+            int sq = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+
+            // Pinned if the only piece in between is one of ours
+            long between = Bitboards.BETWEEN[kingSq][sq] & occupancy;
+            if (Long.bitCount(between) == 1 && (between & getOccupancy(color)) != 0) {
+                pinned |= between;
+            }
+        }
+        return pinned;
+    }
+
     // Returns a string of the current state of the chess board
     String printBoard() {
         StringBuilder s = new StringBuilder();
@@ -61,10 +294,4 @@ class ChessBoard {
         }
         return s.toString();
     }
-
-
-    // Returns a ChessBoard object for the current game
-    ChessPiece[][] getBoard() {
-        return board;
-    }
 }
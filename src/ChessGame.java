@@ -2,52 +2,62 @@ package chess;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
+/**
+ * A single chess game. All of its state (board, king squares, en passant data)
+ * lives in its own Position, so many games can be played in the same JVM.
+ * A ChessGame is not synchronized: each game must be used by one thread at a
+ * time, but different games can run on different threads at once.
+ *
+ * The moves form a tree: taking a move back (undo) keeps it, so it can be
+ * played again (redo), and playing another move from an earlier position
+ * starts a variation. Moving along the tree makes or takes back one move at a
+ * time and never replays the game from the start.
+ */
 public class ChessGame {
+    private final Position position;
     private final ChessBoard chessBoard;
-    private ChessPiece.Color currTurnColor; // Color for this turn
-    private List<String> chessMoves; // List of moves
-
-    /*
-     * NOTE:
-     * Having these variables static contradicts the logic of the game, however it
-     * is the only solution I could come up with
-     * Only one ChessGame could be initiated at once for these values to work
-     */
-
-    // Store position of White King
-    static int whiteKingRow;
-    static int whiteKingCol;
-
-    // Store position of Black King
-    static int blackKingRow;
-    static int blackKingCol;
-
-    // Needed to detect en passant
-    static int lastSRow;
-    static int lastERow;
-    static int lastECol;
+    private final MoveNode root; // Holds the moves played from the starting position
+    private MoveNode current; // The last move made (root at the start)
 
     /**
      * Initialize a new chess board
      */
     public ChessGame() {
-        chessBoard = new ChessBoard();
-        currTurnColor = ChessPiece.Color.WHITE;
-        chessMoves = new LinkedList<>();
+        this(new Position());
+    }
 
-        // Initiates the king positions
-        whiteKingRow = 7;
-        whiteKingCol = 4;
-        blackKingRow = 0;
-        blackKingCol = 4;
+    // Creates a game starting from the given position
+    private ChessGame(Position position) {
+        this.position = position;
+        chessBoard = position.getBoard();
+        root = new MoveNode(Move.NONE, null, null);
+        current = root;
+    }
+
+    /**
+     * Creates a game starting from a position in Forsyth-Edwards Notation
+     * (e.g. "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1").
+     * Castling rights become the moved flags of the Kings and Rooks
+     * 
+     * @param fen the position in FEN
+     * @return a new game starting from the position
+     * @throws ChessException if the FEN string or its position is invalid
+     */
+    public static ChessGame fromFen(String fen) throws ChessException {
+        return new ChessGame(Fen.parse(fen));
+    }
 
-        // Sets last coordinates to invalid number
-        lastSRow = -1;
-        lastERow = -1;
-        lastECol = -1;
+    /**
+     * Returns the current position in Forsyth-Edwards Notation
+     * 
+     * @return the current position in FEN
+     */
+    public String toFen() {
+        return Fen.format(position);
     }
 
     /**
@@ -56,7 +66,7 @@ public class ChessGame {
      * @return the current turn color
      */
     ChessPiece.Color getCurrTurnColor() {
-        return currTurnColor;
+        return position.getTurnColor();
     }
 
     /**
@@ -66,86 +76,230 @@ public class ChessGame {
      *         blackKingRow, blackKingCol]
      */
     int[] getKingPos() {
-        return new int[] { whiteKingRow, whiteKingCol, blackKingRow, blackKingCol };
+        return new int[] { position.getKingRow(ChessPiece.Color.WHITE), position.getKingCol(ChessPiece.Color.WHITE),
+                position.getKingRow(ChessPiece.Color.BLACK), position.getKingCol(ChessPiece.Color.BLACK) };
+    }
+
+    /**
+     * Returns the position of this game
+     *
+     * @return the position of this game
+     */
+    Position getPosition() {
+        return position;
     }
 
     /**
      * Makes a move, updates the board, and changes turn to next player.
+     * A capture (x), check (+) or checkmate (#) mark must match the move, but
+     * can be left out
      * 
-     * @param move the chess move you want to make (e.g. e4, Na4)
+     * @param move the chess move you want to make (e.g. e4, Na4, exd8=Q+)
      */
     public void makeMove(String move) throws ChessException {
-        // All chess notation formats
-        String format1 = "^[a-h][1-8]$"; // e.g e5, h7
-        String format2 = "^[RNBQK][a-h][1-8]$"; // e.g Nc3, Qh5
-        String format3 = "^[RNBQKa-h]x[a-h][1-8]$"; // Bxc4, Kxd8
-        String format4 = "^[RNBQK][a-h][a-h][1-8]$"; // Nad5, Rfd1
-        String format5 = "^[RNBQK][a-h]x[a-h][1-8]$"; // Raxc7, Qcxh2
-        String format6 = "^O-O$"; // O-O
-        String format7 = "^O-O-O$"; // O-O-O
-        String regex = String.format("%1$s|%2$s|%3$s|%4$s|%5$s|%6$s|%7$s", format1, format2, format3, format4, format5,
-                format6, format7);
-
-        if (!move.matches(regex)) {
-            throw new ChessException("Invalid Move format. Please enter a valid move");
+        long start = MetricsTimer.start();
+        try {
+            playMove(move);
+        } catch (ChessException e) {
+            Metrics.MAKE_MOVE.fail();
+            throw e;
+        } finally {
+            Metrics.MAKE_MOVE.stop(start);
         }
+    }
 
-        ChessPiece[][] board = chessBoard.getBoard();
+    // Makes a move in algebraic notation (see makeMove) and returns it as a packed move (see Move)
+    int playMove(String move) throws ChessException {
+        // Decodes the algebraic notation without regular expressions or substrings
+        int san = SanParser.parse(move);
+        if (san == SanParser.INVALID) {
+            throw new ChessException("Invalid Move format. Please enter a valid move");
+        }
 
         // If move is valid, no error is thrown
-        // posCoords confirms that the move is valid
-        int[] posCoords = getAllCoord(move);
-        int sRow = posCoords[0], sCol = posCoords[1];
-        int eRow = posCoords[2], eCol = posCoords[3];
-
-        if (Pawn.enPassant(board, lastSRow, lastERow, lastECol, sRow, sCol, eRow, eCol)) {
-            // Special case for en passant
-            board[lastERow][lastECol] = null;
-        } else if (King.pseudoKingsideCastling(board, sRow, sCol, eRow, eCol)) {
-            // Special case for kingside castling
-            int tempRow = (board[sRow][sCol].getColor() == ChessPiece.Color.WHITE) ? 7 : 0;
-
-            board[tempRow][5] = board[tempRow][7];
-            board[tempRow][7] = null;
-        } else if (King.pseudoQueensideCastling(board, sRow, sCol, eRow, eCol)) {
-            // Special case for kingside castling
-            int tempRow = (board[sRow][sCol].getColor() == ChessPiece.Color.WHITE) ? 7 : 0;
-
-            board[tempRow][3] = board[tempRow][0];
-            board[tempRow][0] = null;
+        int packedMove = resolveMove(san);
+
+        // Updates the board, king squares, en passant data and switches the turn
+        addMove(packedMove, move);
+        return packedMove;
+    }
+
+    // Makes a packed move (see Move), e.g. read from a GameArchive, and records it in SAN
+    // The move is validated like a move in algebraic notation, but nothing is parsed
+    void playMove(int move) throws ChessException {
+        int sRow = Move.sRow(move), sCol = Move.sCol(move), eRow = Move.eRow(move), eCol = Move.eCol(move);
+        MoveStatus status = MoveValidator.getMoveStatus(position, position.getTurnColor(), sRow, sCol, eRow, eCol);
+        if (status != MoveStatus.LEGAL) {
+            throw status.toException();
         }
 
-        // Move piece to endPos
-        board[eRow][eCol] = board[sRow][sCol];
-        board[sRow][sCol] = null;
-
-        // Check if King moved
-        if (sRow == whiteKingRow && sCol == whiteKingCol) {
-            whiteKingRow = eRow;
-            whiteKingCol = eCol;
-        } else if (sRow == blackKingRow && sCol == blackKingCol) {
-            blackKingRow = eRow;
-            blackKingCol = eCol;
+        // Pawns reaching the last row are promoted to a Knight, Bishop, Rook or Queen, other moves are not
+        int promotion = (move >> 12) & 7;
+        boolean promotes = chessBoard.getPiece(sRow, sCol).getSymbol() == 'p' && (eRow == 0 || eRow == 7);
+        if (promotes ? (promotion == 0 || promotion > 4) : promotion != 0) {
+            throw new ChessException("Invalid Move");
         }
 
-        lastSRow = sRow;
-        lastERow = eRow;
-        lastECol = eCol;
+        MoveNode next = current.getChild(move);
+        addMove(move, (next != null) ? next.san : SanWriter.toSan(position, move, true));
+    }
 
-        // Switches color to the color of the next turn
-        currTurnColor = currTurnColor.next();
+    // Makes a legal packed move and goes to its node in the tree, which is created unless the move was played
+    // from this position before
+    private void addMove(int move, String san) {
+        MoveNode next = current.getChild(move);
+        if (next == null) {
+            next = current.addChild(move, san);
+        }
+        current.select(next);
+        position.makeMove(move);
+        current = next;
+    }
 
-        // Adds move to list
-        chessMoves.add(move);
+    /**
+     * Takes back the last move. The move stays in the game, so redo() can play
+     * it again
+     * 
+     * @return true if a move was taken back, false at the start of the game
+     */
+    public boolean undo() {
+        if (current == root) {
+            return false;
+        }
 
-        // Update moved feature of piece
-        if (board[eRow][eCol] != null) {
-            board[eRow][eCol].moved = true;
+        position.unmakeMove();
+        current.parent.select(current);
+        current = current.parent;
+        return true;
+    }
+
+    /**
+     * Plays again the move taken back last from the current position (the main
+     * line if no move was taken back from here)
+     * 
+     * @return true if a move was played, false at the end of the line
+     */
+    public boolean redo() {
+        MoveNode next = current.getSelected();
+        if (next == null) {
+            return false;
+        }
+
+        position.makeMove(next.move);
+        current = next;
+        return true;
+    }
+
+    /**
+     * Plays again one of the moves already played from the current position
+     * (see getNextMoves)
+     * 
+     * @param index the index of the move (0 is the main line)
+     * @throws ChessException if there is no such move
+     */
+    public void redo(int index) throws ChessException {
+        List<MoveNode> children = current.getChildren();
+        if (index < 0 || index >= children.size()) {
+            throw new ChessException("No variation " + index + " from this position");
+        }
+        current.select(children.get(index));
+        redo();
+    }
+
+    /**
+     * Returns the moves already played from the current position: the main line
+     * first, then the variations in the order they were played
+     * 
+     * @return the moves played from the current position
+     */
+    public List<String> getNextMoves() {
+        List<String> moves = new ArrayList<>();
+        for (MoveNode child : current.getChildren()) {
+            moves.add(child.san);
+        }
+        return moves;
+    }
+
+    /**
+     * Returns the moves leading from the starting position to the current one
+     * 
+     * @return the moves of the current line, first move first
+     */
+    public List<String> getMoves() {
+        LinkedList<String> moves = new LinkedList<>();
+        for (MoveNode node = current; node != root; node = node.parent) {
+            moves.addFirst(node.san);
+        }
+        return moves;
+    }
+
+    /**
+     * Makes the line leading to the current position the main line, at the
+     * closest move where it leaves the main line
+     * 
+     * @return true if a variation was promoted, false if the current position
+     *         is already on the main line
+     */
+    public boolean promoteVariation() {
+        for (MoveNode node = current; node != root; node = node.parent) {
+            if (node.parent.getChildren().get(0) != node) {
+                node.parent.promote(node);
+                return true;
+            }
         }
+        return false;
+    }
+
+    /**
+     * Returns the moves of the game in PGN movetext, with the variations in
+     * parentheses (e.g. "1. e4 e5 (1... c5 2. Nf3) 2. Nf3")
+     * 
+     * @return the movetext of the whole game tree
+     */
+    public String getMovetext() {
+        StringBuilder text = new StringBuilder();
+        appendLine(text, root, position.getFirstPly(), true);
+        return text.toString();
+    }
+
+    // Appends the main line after a node, each move followed by its variations
+    private static void appendLine(StringBuilder text, MoveNode node, int ply, boolean numberBlack) {
+        List<MoveNode> children = node.getChildren();
+        while (!children.isEmpty()) {
+            appendMove(text, children.get(0), ply, numberBlack);
+            numberBlack = false;
+
+            for (int i = 1; i < children.size(); i++) {
+                text.append(" (");
+                appendMove(text, children.get(i), ply, true);
+                appendLine(text, children.get(i), ply + 1, false);
+                text.append(')');
+                numberBlack = true; // The main line goes on after the variation
+            }
+
+            children = children.get(0).getChildren();
+            ply++;
+        }
+    }
+
+    // Appends a move, with its number before a White move or when a Black move needs it
+    private static void appendMove(StringBuilder text, MoveNode node, int ply, boolean numberBlack) {
+        int length = text.length();
+        if (length > 0 && text.charAt(length - 1) != '(') {
+            text.append(' ');
+        }
+        if (ply % 2 == 0) {
+            text.append(ply / 2 + 1).append(". ");
+        } else if (numberBlack) {
+            text.append(ply / 2 + 1).append("... ");
+        }
+        text.append(node.san);
     }
 
     /**
      * Checks if the given color is in check
+     * NOTE: Answered with the board's attack sets instead of validating every
+     * opponent piece against the King
      * 
      * @param board   the board analyzed for checks
      * @param color   the color who is checked for checks
@@ -153,45 +307,88 @@ public class ChessGame {
      * @param kingCol the column of the King (of the color)
      * @return true if given color is in check; false otherwise
      */
-    static boolean isCheck(ChessPiece[][] board, ChessPiece.Color color, int kingRow, int kingCol) {
-        for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[0].length; col++) {
-                // If opponent piece can capture the king, then it is check
-                try {
-                    if (board[row][col] != null && board[row][col].getColor() != color
-                            && MoveValidator.pseudoValidate(board, board[row][col].getColor(), row, col, kingRow,
-                                    kingCol)) {
-                        return true;
-                    }
-                } catch (ChessException e) {
-                    continue;
-                }
+    static boolean isCheck(ChessBoard board, ChessPiece.Color color, int kingRow, int kingCol) {
+        long start = MetricsTimer.start();
+        // If opponent piece can capture the king, then it is check
+        boolean check = board.isAttacked(kingRow, kingCol, color.next());
+        Metrics.IS_CHECK.stop(start);
+        return check;
+    }
 
-            }
-        }
-        return false;
+    /**
+     * Checks if the current color is in check
+     * 
+     * @return true if the current color is in check, false otherwise
+     */
+    public boolean isCheck() {
+        long start = MetricsTimer.start();
+        boolean check = position.isInCheck();
+        Metrics.IS_CHECK.stop(start);
+        return check;
     }
 
     /**
      * Checks if the color is checkmated on the board
      * 
-     * @param board the board checked for checkmate
-     * @param color the color checked for checkmate
+     * @param position the position checked for checkmate
+     * @param color    the color checked for checkmate
      * @return true if the color is checkmated on the board, false otherwise
      */
-    boolean isCheckmate(ChessPiece[][] board, ChessPiece.Color color) {
-        List<int[]> list = MoveValidator.getLegalMoves(board, color);
-        return list.size() == 0;
+    boolean isCheckmate(Position position, ChessPiece.Color color) {
+        return !MoveValidator.hasLegalMove(position, color);
     }
 
     /**
      * Checks if the current color is checkmated
+     * NOTE: The legal moves of a position checked more than once are stored in
+     * the LegalMoveCache shared by every game, where the next move is looked up
+     * before being validated piece by piece. The moves found are the same with
+     * or without the cache
      * 
      * @return true if the current color is checkmated, false otherwise
      */
     public boolean isCheckmate() {
-        List<int[]> list = MoveValidator.getLegalMoves(chessBoard.getBoard(), currTurnColor);
-        return list.size() == 0;
+        short[] moves = LegalMoveCache.SHARED.getLegalMoves(position);
+        return (moves == null) ? !MoveValidator.hasLegalMove(position, position.getTurnColor()) : moves.length == 0;
+    }
+
+    /**
+     * Returns a 64-bit key of the current position (Zobrist hash of the pieces,
+     * side to move, castling rights and en passant square). Equal positions
+     * have equal keys
+     * 
+     * @return the key of the current position
+     */
+    public long getPositionKey() {
+        return position.getKey();
+    }
+
+    /**
+     * Checks if the current position has occurred at least three times
+     * 
+     * @return true if the position occurred three times, false otherwise
+     */
+    public boolean isThreefoldRepetition() {
+        return position.getRepetitions() >= 3;
+    }
+
+    /**
+     * Checks if fifty moves by each player were made without a capture or a
+     * pawn move
+     * 
+     * @return true if the fifty-move rule applies, false otherwise
+     */
+    public boolean isFiftyMoveRule() {
+        return position.getHalfmoveClock() >= 100;
+    }
+
+    /**
+     * Checks if a draw can be claimed (threefold repetition or fifty-move rule)
+     * 
+     * @return true if a draw can be claimed, false otherwise
+     */
+    public boolean isDraw() {
+        return isThreefoldRepetition() || isFiftyMoveRule();
     }
 
     /**
@@ -206,19 +403,10 @@ public class ChessGame {
     public void exportGame(String fileName) {
         try {
             FileWriter writer = new FileWriter(String.format("%s.pgn", fileName), true);
-            boolean isWhite = true;
-            int moveIndex = 1;
-
-            for (String move : chessMoves) {
-                if (isWhite) {
-                    writer.write(String.format("%s. %s ", moveIndex, move));
-                } else {
-                    writer.write(String.format("%s ", move));
-                    moveIndex++;
-                }
 
-                isWhite = !isWhite;
-            }
+            // The whole game tree, variations included
+            writer.write(getMovetext());
+            writer.write(' ');
 
             writer.close();
         } catch (IOException e) {
@@ -233,135 +421,173 @@ public class ChessGame {
      *         player
      */
     public ChessPiece.Color getTurnColor() {
-        return currTurnColor;
-    }
-
-    // Returns an array containing the row and col index given the position in chess
-    // notation (e.g. e4)
-    private int[] getCoord(String pos) {
-        // (int) 'a' -> 97
-        // (int) '1' -> 49
-        // NOTE: Row 1 on a chessboard is row 7 in a 0-indexed matrix
-        int col = pos.charAt(0) - 97;
-        int row = chessBoard.getBoard().length - 1 - (pos.charAt(1) - 49);
-
-        return new int[] { row, col };
-    }
-
-    // Returns an array containing the sRow, sCol, eRow and eCol given the chess
-    // move (e.g e4 or Nc3)
-    // NOTE: This is a very brute force method
-    // TODO: Make this method more efficient in the future
-    private int[] getAllCoord(String move) throws ChessException {
-        List<int[]> list = new LinkedList<>();
-        ChessPiece[][] board = chessBoard.getBoard();
-        int eRow = -1, eCol = -1; // default
-
-        switch (move) {
-            case "O-O":
-                // Kingside castling
-                if (currTurnColor == ChessPiece.Color.WHITE
-                        && MoveValidator.isValidMove(board, currTurnColor, 7, 4, 7, 5)
-                        && MoveValidator.isValidMove(board, currTurnColor, 7, 4, 7, 6)) {
-                    list.add(new int[] { 7, 4 });
-                    eRow = 7;
-                    eCol = 6;
-                } else if (currTurnColor == ChessPiece.Color.BLACK
-                        && MoveValidator.isValidMove(board, currTurnColor, 0, 4, 0, 5)
-                        && MoveValidator.isValidMove(board, currTurnColor, 0, 4, 0, 6)) {
-                    list.add(new int[] { 0, 4 });
-                    eRow = 0;
-                    eCol = 6;
-                }
-                break;
-            case "O-O-O":
-                // Queenside castling
-                if (currTurnColor == ChessPiece.Color.WHITE
-                        && MoveValidator.isValidMove(board, currTurnColor, 7, 4, 7, 3)
-                        && MoveValidator.isValidMove(board, currTurnColor, 7, 4, 7, 2)) {
-                    list.add(new int[] { 7, 4 });
-                    eRow = 7;
-                    eCol = 2;
-                } else if (currTurnColor == ChessPiece.Color.BLACK
-                        && MoveValidator.isValidMove(board, currTurnColor, 0, 4, 0, 3)
-                        && MoveValidator.isValidMove(board, currTurnColor, 0, 4, 0, 2)) {
-                    list.add(new int[] { 0, 4 });
-                    eRow = 0;
-                    eCol = 2;
-                }
-                break;
-            default:
-                String ePos = move.substring(move.length() - 2);
-                eRow = getCoord(ePos)[0];
-                eCol = getCoord(ePos)[1];
-
-                char PIECE_SYMBOL = (move.matches("^[a-h][1-8]$") || move.matches("^[a-h]x[a-h][1-8]$")) ? 'p'
-                        : move.charAt(0);
-
-                for (int row = 0; row < board.length; row++) {
-                    for (int col = 0; col < board[0].length; col++) {
-                        try {
-                            if (board[row][col] != null && board[row][col].getSymbol() == PIECE_SYMBOL
-                                    && MoveValidator.isValidMove(board, currTurnColor, row, col, eRow, eCol)) {
-                                list.add(new int[] { row, col });
-                            }
-                        } catch (ChessException e) {
-                            continue;
-                        }
-                    }
-                }
-                break;
+        return position.getTurnColor();
+    }
+
+    // Returns the name of a square in chess notation (e.g. row 4, col 4 -> e4)
+    static String getSquareName(int row, int col) {
+        return "" + (char) ('a' + col) + (char) ('1' + 7 - row);
+    }
+
+    // Returns the packed move (see Move) described by a SanParser descriptor
+    // Only the pieces of the moving type that match the disambiguation are validated, without exceptions
+    private int resolveMove(int san) throws ChessException {
+        long start = MetricsTimer.start();
+        try {
+            int move = findMove(san);
+            checkMarks(san, move);
+            return move;
+        } catch (ChessException e) {
+            Metrics.RESOLVE_MOVE.fail();
+            throw e;
+        } finally {
+            Metrics.RESOLVE_MOVE.stop(start);
         }
+    }
 
-        if (list.size() == 0) {
+    // Body of resolveMove, which times it (see Metrics)
+    private int findMove(int san) throws ChessException {
+        ChessBoard board = chessBoard;
+        ChessPiece.Color currTurnColor = position.getTurnColor();
+        int castling = SanParser.castling(san);
+
+        if (castling != 0) {
+            // The King moves two squares towards the rook
+            int row = (currTurnColor == ChessPiece.Color.WHITE) ? 7 : 0;
+            int eCol = (castling == SanParser.KINGSIDE) ? 6 : 2;
+            if (position.getKingRow(currTurnColor) != row || position.getKingCol(currTurnColor) != 4) {
+                throw MoveStatus.UNREACHABLE.toException();
+            }
+
+            int move = Move.encode(row, 4, row, eCol, (char) 0);
+            short[] cached = LegalMoveCache.SHARED.get(position.getKey());
+            if (cached != null && findCachedMove(cached, Bitboards.bit(row, 4), move & ~63) != Move.NONE) {
+                return move;
+            }
+
+            MoveStatus status = MoveValidator.getMoveStatus(position, currTurnColor, row, 4, row, eCol);
+            if (status != MoveStatus.LEGAL) {
+                throw status.toException();
+            }
+            return move;
+        }
+
+        char pieceSymbol = SanParser.piece(san);
+        int eRow = SanParser.eRow(san), eCol = SanParser.eCol(san);
+        char promotion = SanParser.promotion(san);
+
+        // Only pawns reaching the last row are promoted, to a Queen if no piece is given
+        if (pieceSymbol == 'p' && (eRow == 0 || eRow == 7)) {
+            promotion = (promotion == 0) ? 'Q' : promotion;
+        } else if (promotion != 0) {
             throw new ChessException("Invalid Move");
-        } else if (list.size() == 1) {
-            int[] temp = list.get(0);
-            return new int[] { temp[0], temp[1], eRow, eCol };
-        } else {
-            if (move.matches("^[RNBQK][a-h][a-h][1-8]$|^[RNBQK][a-h]x[a-h][1-8]$")) {
-                int sCol = move.charAt(1) - 97;
-                int sRow = -1;
-                for (int[] temp : list) {
-                    if (temp[1] == sCol) {
-                        sRow = temp[0];
-                        break;
-                    }
-                }
+        }
 
-                if (sRow == -1) {
-                    throw new ChessException("Invalid Move");
-                } else {
-                    return new int[] { sRow, sCol, eRow, eCol };
-                }
+        // Only visit the squares holding the moving piece type
+        long candidates = board.getPieceSet(currTurnColor, pieceSymbol);
+        int sCol = SanParser.sCol(san), sRow = SanParser.sRow(san);
+        if (sCol != SanParser.ANY) {
+            candidates &= Bitboards.FILE_A << sCol;
+        }
+        if (sRow != SanParser.ANY) {
+            candidates &= Bitboards.ROW_0 << (sRow * 8);
+        }
+
+        // With the legal moves of the position cached (see isCheckmate), a single match is the move
+        // Otherwise, or without a match (the reason is reported) or with several, the pieces are validated
+        short[] cached = LegalMoveCache.SHARED.get(position.getKey());
+        if (cached != null) {
+            int move = findCachedMove(cached, candidates, Move.encode(0, 0, eRow, eCol, promotion));
+            if (move != Move.NONE) {
+                return move;
+            }
+        }
+
+        int found = Move.NONE;
+        int count = 0;
+        MoveStatus rejection = MoveStatus.UNREACHABLE; // Reported if no piece can make the move
+        long endBit = Bitboards.bit(eRow, eCol);
+        while (candidates != 0) {
+            int sq = Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+
+            int row = sq >> 3, col = sq & 7;
+            // Skip pieces that cannot reach the end square before running the full validation
+            if ((board.getPiece(row, col).getTargets(position, row, col) & endBit) == 0) {
+                continue;
+            }
+
+            MoveStatus status = MoveValidator.getMoveStatus(position, currTurnColor, row, col, eRow, eCol);
+            if (status == MoveStatus.LEGAL) {
+                found = Move.encode(row, col, eRow, eCol, promotion);
+                count++;
             } else {
-                throw new ChessException("Invalid Move: Multiple options");
+                rejection = status;
             }
         }
+
+        // The exception is only built here, once the move is known to be invalid
+        if (count == 0) {
+            throw rejection.toException();
+        } else if (count > 1) {
+            throw new ChessException("Invalid Move: Multiple options");
+        }
+        return found;
     }
 
-    static ChessPiece[][] getCopyBoard(ChessPiece[][] board, int sRow, int sCol, int eRow, int eCol) {
-        // Make a copy of the board
-        ChessPiece[][] tempBoard = new ChessPiece[board.length][board[0].length];
-        for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[0].length; col++) {
-                if (board[row][col] == null) {
-                    tempBoard[row][col] = null;
-                } else {
-                    tempBoard[row][col] = (ChessPiece) board[row][col].clone();
+    // Rejects a capture, check or checkmate mark of the notation that the legal move does not match
+    // The position is unchanged afterwards; moves without marks are not checked
+    private void checkMarks(int san, int move) throws ChessException {
+        int sRow = Move.sRow(move), sCol = Move.sCol(move), eRow = Move.eRow(move), eCol = Move.eCol(move);
+        if (SanParser.isCapture(san) && chessBoard.getPiece(eRow, eCol) == null
+                && !position.isEnPassant(sRow, sCol, eRow, eCol)) {
+            throw new ChessException("Invalid Move: Nothing to capture");
+        }
+
+        boolean check = SanParser.isCheck(san), checkmate = SanParser.isCheckmate(san);
+        if (check || checkmate) {
+            position.makeMove(move);
+            boolean givesCheck = position.isInCheck();
+            boolean mates = givesCheck && !MoveValidator.hasLegalMove(position, position.getTurnColor());
+            position.unmakeMove();
+
+            if (!givesCheck) {
+                throw new ChessException("Invalid Move: The move does not give check");
+            } else if (checkmate && !mates) {
+                throw new ChessException("Invalid Move: The move does not checkmate");
+            }
+        }
+    }
+
+    // Returns the only cached move starting from one of the candidate squares with the end square and promotion of
+    // the target (start square ignored), or Move.NONE if there is none or several
+    private static int findCachedMove(short[] moves, long candidates, int target) {
+        int found = Move.NONE;
+        for (short move : moves) {
+            if ((move & ~63) == target && (candidates & (1L << (move & 63))) != 0) {
+                if (found != Move.NONE) {
+                    return Move.NONE;
                 }
+                found = move;
             }
         }
+        return found;
+    }
 
-        // Make the move (whether legal or not)
-        tempBoard[eRow][eCol] = tempBoard[sRow][sCol];
-        tempBoard[sRow][sCol] = null;
+    static ChessBoard getCopyBoard(Position position, int sRow, int sCol, int eRow, int eCol) {
+        long start = MetricsTimer.start();
+        // Make a copy of the board
+        ChessBoard tempBoard = new ChessBoard(position.getBoard());
 
         // Special case for en passant
-        if (Pawn.enPassant(tempBoard, lastSRow, lastERow, lastECol, sRow, sCol, eRow, eCol)) {
-            tempBoard[lastERow][lastECol] = null;
+        if (position.isEnPassant(sRow, sCol, eRow, eCol)) {
+            tempBoard.removePiece(position.getLastERow(), position.getLastECol());
         }
 
+        // Make the move (whether legal or not)
+        tempBoard.movePiece(sRow, sCol, eRow, eCol);
+
+        Metrics.COPY_BOARD.stop(start);
         return tempBoard;
     }
 }
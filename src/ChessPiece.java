@@ -18,6 +18,7 @@ abstract class ChessPiece {
     protected final String PIECE_NAME;
     protected final Color PIECE_COLOR;
     protected final char PIECE_SYMBOL;
+    protected final int PIECE_INDEX; // Index of this piece's bitboard in ChessBoard
 
     // Used to keep track of what pieces moved
     protected boolean moved;
@@ -26,6 +27,7 @@ abstract class ChessPiece {
         PIECE_COLOR = color;
         PIECE_NAME = name;
         PIECE_SYMBOL = symbol;
+        PIECE_INDEX = ChessBoard.pieceIndex(color, symbol);
     }
 
     // Copy constructor (for deep copies)
@@ -34,6 +36,26 @@ abstract class ChessPiece {
         this.moved = piece.moved;
     }
 
+    // Returns a new piece given its color and symbol (p, N, B, R, Q or K)
+    static ChessPiece create(Color color, char symbol) {
+        switch (symbol) {
+            case 'p':
+                return new Pawn(color);
+            case 'N':
+                return new Knight(color);
+            case 'B':
+                return new Bishop(color);
+            case 'R':
+                return new Rook(color);
+            case 'Q':
+                return new Queen(color);
+            case 'K':
+                return new King(color);
+            default:
+                throw new ChessException("Invalid piece: " + symbol);
+        }
+    }
+
     String getName() { return PIECE_NAME; }
     Color getColor() { return PIECE_COLOR; }
     char getSymbol() { return PIECE_SYMBOL; }
@@ -42,36 +64,23 @@ abstract class ChessPiece {
     // I debated implementing this method because it felt odd for a piece to see the board
     // In the end, I decided to implement it this way for the sake of simplicity and modularity
 
+    // Returns the set of squares this piece can reach from (sRow, sCol), see Bitboards for the square layout
+    // Does not check if the move is valid i.e invalid due to check
+    abstract long getTargets(Position position, int sRow, int sCol);
+
     // Returns true if a move is legally possible, false otherwise (does not check if the move is valid i.e invalid due to check)
-    abstract boolean isLegal(ChessPiece[][] board, int sRow, int sCol, int eRow, int eCol);
+    boolean isLegal(Position position, int sRow, int sCol, int eRow, int eCol) throws ChessException {
+        checkStartAndEnd(position.getBoard(), sRow, sCol, eRow, eCol);
+
+        return (getTargets(position, sRow, sCol) & Bitboards.bit(eRow, eCol)) != 0;
+    }
 
     // Return true if rows and columns are legal. Returns custom error otherwise
     // Made for readability
-    protected boolean checkStartAndEnd(ChessPiece[][] board, int sRow, int sCol, int eRow, int eCol) throws ChessException {
-        // Check if move (end square) is out of bounds
-        if(eRow < 0 || eRow >= board.length || eCol < 0 || eCol >= board.length) {
-            throw new ChessException("Invalid Move: Out of bounds");
-        }
-
-        // Check if start square is equal to end square
-        if(sRow == eRow && sCol == eCol) {
-            throw new ChessException("Invalid Move: Same square");
-        }
-
-        // Check if there is a piece on starting square
-        ChessPiece piece = board[sRow][sCol];
-        if(piece == null) {
-            throw new ChessException("Invalid Move: No piece");
-        }
-
-        // Check if starting piece is of the right color
-        if(piece.getColor() != PIECE_COLOR) {
-            throw new ChessException("Invalid Move: Wrong Piece Color");
-        }
-
-        // Check if there is a piece of the same color on the end square
-        if(board[eRow][eCol] != null && board[eRow][eCol].getColor() == PIECE_COLOR) {
-            throw new ChessException("Invalid Move: Captured piece is same color");
+    protected boolean checkStartAndEnd(ChessBoard board, int sRow, int sCol, int eRow, int eCol) throws ChessException {
+        MoveStatus status = MoveValidator.getSquareStatus(board, PIECE_COLOR, sRow, sCol, eRow, eCol);
+        if(status != MoveStatus.LEGAL) {
+            throw status.toException();
         }
 
         return true;
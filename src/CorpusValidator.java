@@ -0,0 +1,227 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays every game of a PGN file through ChessGame on all cores and reports
+ * the games that contain an invalid move, together with the overall throughput.
+ *
+ * Games are read by one thread and replayed in batches on a fork-join pool,
+ * one ChessGame per game. Only a bounded number of batches is in flight, so
+ * memory stays constant for any corpus size.
+ *
+ * Usage: java chess.CorpusValidator file.pgn [--threads N]
+ */
+public class CorpusValidator {
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * A game that could not be replayed
+     */
+    public static class Failure {
+        private final int gameIndex;
+        private final int ply;
+        private final String move;
+        private final String message;
+
+        Failure(int gameIndex, int ply, String move, String message) {
+            this.gameIndex = gameIndex;
+            this.ply = ply;
+            this.move = move;
+            this.message = message;
+        }
+
+        // Index of the game in the file (the first game is 1)
+        public int getGameIndex() {
+            return gameIndex;
+        }
+
+        // Ply of the invalid move (the first move of the game is 1)
+        public int getPly() {
+            return ply;
+        }
+
+        public String getMove() {
+            return move;
+        }
+
+        // Message of the ChessException thrown by the move, or the class and message of any other exception
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Game %d, ply %d (%s): %s", gameIndex, ply, move, message);
+        }
+    }
+
+    /**
+     * The result of validating a corpus
+     */
+    public static class Report {
+        private final int games;
+        private final long plies;
+        private final long nanos;
+        private final List<Failure> failures;
+        private final boolean complete;
+
+        Report(int games, long plies, long nanos, List<Failure> failures, boolean complete) {
+            this.games = games;
+            this.plies = plies;
+            this.nanos = nanos;
+            this.failures = failures;
+            this.complete = complete;
+        }
+
+        // Number of games replayed
+        public int getGames() {
+            return games;
+        }
+
+        // False if the validation was interrupted: only the games counted were replayed
+        public boolean isComplete() {
+            return complete;
+        }
+
+        // Number of moves replayed (including the invalid ones)
+        public long getPlies() {
+            return plies;
+        }
+
+        // Failing games ordered by game index
+        public List<Failure> getFailures() {
+            return failures;
+        }
+
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        public double getGamesPerSecond() {
+            return games / getSeconds();
+        }
+
+        public double getPliesPerSecond() {
+            return plies / getSeconds();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d games, %d plies, %d invalid games in %.3f s (%.0f games/s, %.0f plies/s)%s",
+                    games, plies, failures.size(), getSeconds(), getGamesPerSecond(), getPliesPerSecond(),
+                    complete ? "" : ", interrupted");
+        }
+    }
+
+    /**
+     * Replays every game of a PGN file in parallel
+     *
+     * @param file    the PGN file
+     * @param threads the number of threads replaying games
+     * @return the failing games and the throughput; if the thread is
+     *         interrupted, the validation stops and the report (not complete)
+     *         covers the games replayed so far
+     * @throws IOException if the file cannot be read
+     */
+    public static Report validate(Path file, int threads) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Semaphore inFlight = new Semaphore(threads * 2);
+        ConcurrentLinkedQueue<Failure> failures = new ConcurrentLinkedQueue<>();
+        LongAdder games = new LongAdder();
+        LongAdder plies = new LongAdder();
+        boolean complete = false;
+
+        long start = System.nanoTime();
+        try (PgnReader reader = new PgnReader(file)) {
+            while (reader.hasNext()) {
+                List<PgnGame> batch = new ArrayList<>(BATCH_SIZE);
+                while (batch.size() < BATCH_SIZE && reader.hasNext()) {
+                    batch.add(reader.next());
+                }
+
+                inFlight.acquire();
+                pool.execute(() -> {
+                    try {
+                        for (PgnGame game : batch) {
+                            Failure failure = validateGame(game, plies);
+                            if (failure != null) {
+                                failures.add(failure);
+                            }
+                            games.increment(); // Counted once replayed, so an interrupted run counts what it did
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            pool.shutdown();
+            complete = pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow(); // Drops the batches not started yet if interrupted (or if the file failed)
+        }
+        long nanos = System.nanoTime() - start;
+
+        List<Failure> sorted = new ArrayList<>(failures);
+        sorted.sort(Comparator.comparingInt(Failure::getGameIndex));
+        return new Report(games.intValue(), plies.sum(), nanos, Collections.unmodifiableList(sorted), complete);
+    }
+
+    /**
+     * Replays one game
+     *
+     * @param game  the game to replay
+     * @param plies counter of replayed moves
+     * @return the first invalid move of the game (or the first move that threw
+     *         any other exception), or null if every move is valid
+     */
+    static Failure validateGame(PgnGame game, LongAdder plies) {
+        ChessGame chessGame = new ChessGame();
+        List<String> moves = game.getMoves();
+
+        for (int i = 0; i < moves.size(); i++) {
+            plies.increment();
+            try {
+                chessGame.makeMove(moves.get(i));
+            } catch (ChessException e) {
+                return new Failure(game.getIndex(), i + 1, moves.get(i), e.getMessage());
+            } catch (RuntimeException e) {
+                // A bug rather than an invalid move; reported as a failure, not lost in the pool
+                return new Failure(game.getIndex(), i + 1, moves.get(i), e.getClass().getName() + ": "
+                        + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java chess.CorpusValidator file.pgn [--threads N]");
+            return;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length == 3 && args[1].equals("--threads")) {
+            threads = Integer.parseInt(args[2]);
+        }
+
+        Report report = validate(Paths.get(args[0]), threads);
+        for (Failure failure : report.getFailures()) {
+            System.out.println(failure);
+        }
+        System.out.println(report);
+    }
+}
@@ -0,0 +1,248 @@
+package chess;
+
+// Static evaluation of a position, in centipawns from the side to move's point of view
+// Every term has a middlegame and an endgame value, blended by the game phase (the non-pawn material left)
+// NOTE: Material and piece-square values are kept up to date by ChessBoard with every piece added or removed,
+// only mobility and king safety are computed here
+final class Evaluation {
+    // Value of each piece type, in ChessBoard.PIECE_TYPES order (the King is never captured)
+    // Used for move ordering. The evaluation uses the middlegame and endgame values below
+    static final int[] PIECE_VALUES = { 100, 320, 330, 500, 900, 0 };
+
+    private static final int[] MG_VALUES = { 82, 337, 365, 477, 1025, 0 };
+    private static final int[] EG_VALUES = { 94, 281, 297, 512, 936, 0 };
+
+    // Weight of each piece type in the game phase (24 with every piece on the board, 0 with only pawns and Kings)
+    static final int[] PHASE_WEIGHTS = { 0, 1, 1, 2, 4, 0 };
+    static final int MAX_PHASE = 24;
+
+    // Piece-square tables (values of the PeSTO evaluation), seen from White with a8 first, the same layout as the
+    // board. Black uses the table mirrored vertically (square ^ 56)
+    private static final int[][] MG_TABLES = {
+            { // Pawn
+                    0, 0, 0, 0, 0, 0, 0, 0,
+                    98, 134, 61, 95, 68, 126, 34, -11,
+                    -6, 7, 26, 31, 65, 56, 25, -20,
+                    -14, 13, 6, 21, 23, 12, 17, -23,
+                    -27, -2, -5, 12, 17, 6, 10, -25,
+                    -26, -4, -4, -10, 3, 3, 33, -12,
+                    -35, -1, -20, -23, -15, 24, 38, -22,
+                    0, 0, 0, 0, 0, 0, 0, 0 },
+            { // Knight
+                    -167, -89, -34, -49, 61, -97, -15, -107,
+                    -73, -41, 72, 36, 23, 62, 7, -17,
+                    -47, 60, 37, 65, 84, 129, 73, 44,
+                    -9, 17, 19, 53, 37, 69, 18, 22,
+                    -13, 4, 16, 13, 28, 19, 21, -8,
+                    -23, -9, 12, 10, 19, 17, 25, -16,
+                    -29, -53, -12, -3, -1, 18, -14, -19,
+                    -105, -21, -58, -33, -17, -28, -19, -23 },
+            { // Bishop
+                    -29, 4, -82, -37, -25, -42, 7, -8,
+                    -26, 16, -18, -13, 30, 59, 18, -47,
+                    -16, 37, 43, 40, 35, 50, 37, -2,
+                    -4, 5, 19, 50, 37, 37, 7, -2,
+                    -6, 13, 13, 26, 34, 12, 10, 4,
+                    0, 15, 15, 15, 14, 27, 18, 10,
+                    4, 15, 16, 0, 7, 21, 33, 1,
+                    -33, -3, -14, -21, -13, -12, -39, -21 },
+            { // Rook
+                    32, 42, 32, 51, 63, 9, 31, 43,
+                    27, 32, 58, 62, 80, 67, 26, 44,
+                    -5, 19, 26, 36, 17, 45, 61, 16,
+                    -24, -11, 7, 26, 24, 35, -8, -20,
+                    -36, -26, -12, -1, 9, -7, 6, -23,
+                    -45, -25, -16, -17, 3, 0, -5, -33,
+                    -44, -16, -20, -9, -1, 11, -6, -71,
+                    -19, -13, 1, 17, 16, 7, -37, -26 },
+            { // Queen
+                    -28, 0, 29, 12, 59, 44, 43, 45,
+                    -24, -39, -5, 1, -16, 57, 28, 54,
+                    -13, -17, 7, 8, 29, 56, 47, 57,
+                    -27, -27, -16, -16, -1, 17, -2, 1,
+                    -9, -26, -9, -10, -2, -4, 3, -3,
+                    -14, 2, -11, -2, -5, 2, 14, 5,
+                    -35, -8, 11, 2, 8, 15, -3, 1,
+                    -1, -18, -9, 10, -15, -25, -31, -50 },
+            { // King
+                    -65, 23, 16, -15, -56, -34, 2, 13,
+                    29, -1, -20, -7, -8, -4, -38, -29,
+                    -9, 24, 2, -16, -20, 6, 22, -22,
+                    -17, -20, -12, -27, -30, -25, -14, -36,
+                    -49, -1, -27, -39, -46, -44, -33, -51,
+                    -14, -14, -22, -46, -44, -30, -15, -27,
+                    1, 7, -8, -64, -43, -16, 9, 8,
+                    -15, 36, 12, -54, 8, -28, 24, 14 }
+    };
+
+    private static final int[][] EG_TABLES = {
+            { // Pawn
+                    0, 0, 0, 0, 0, 0, 0, 0,
+                    178, 173, 158, 134, 147, 132, 165, 187,
+                    94, 100, 85, 67, 56, 53, 82, 84,
+                    32, 24, 13, 5, -2, 4, 17, 17,
+                    13, 9, -3, -7, -7, -8, 3, -1,
+                    4, 7, -6, 1, 0, -5, -1, -8,
+                    13, 8, 8, 10, 13, 0, 2, -7,
+                    0, 0, 0, 0, 0, 0, 0, 0 },
+            { // Knight
+                    -58, -38, -13, -28, -31, -27, -63, -99,
+                    -25, -8, -25, -2, -9, -25, -24, -52,
+                    -24, -20, 10, 9, -1, -9, -19, -41,
+                    -17, 3, 22, 22, 22, 11, 8, -18,
+                    -18, -6, 16, 25, 16, 17, 4, -18,
+                    -23, -3, -1, 15, 10, -3, -20, -22,
+                    -42, -20, -10, -5, -2, -20, -23, -44,
+                    -29, -51, -23, -15, -22, -18, -50, -64 },
+            { // Bishop
+                    -14, -21, -11, -8, -7, -9, -17, -24,
+                    -8, -4, 7, -12, -3, -13, -4, -14,
+                    2, -8, 0, -1, -2, 6, 0, 4,
+                    -3, 9, 12, 9, 14, 10, 3, 2,
+                    -6, 3, 13, 19, 7, 10, -3, -9,
+                    -12, -3, 8, 10, 13, 3, -7, -15,
+                    -14, -18, -7, -1, 4, -9, -15, -27,
+                    -23, -9, -23, -5, -9, -16, -5, -17 },
+            { // Rook
+                    13, 10, 18, 15, 12, 12, 8, 5,
+                    11, 13, 13, 11, -3, 3, 8, 3,
+                    7, 7, 7, 5, 4, -3, -5, -3,
+                    4, 3, 13, 1, 2, 1, -1, 2,
+                    3, 5, 8, 4, -5, -6, -8, -11,
+                    -4, 0, -5, -1, -7, -12, -8, -16,
+                    -6, -6, 0, 2, -9, -9, -11, -3,
+                    -9, 2, 3, -1, -5, -13, 4, -20 },
+            { // Queen
+                    -9, 22, 22, 27, 27, 19, 10, 20,
+                    -17, 20, 32, 41, 58, 25, 30, 0,
+                    -20, 6, 9, 49, 47, 35, 19, 9,
+                    3, 22, 24, 45, 57, 40, 57, 36,
+                    -18, 28, 19, 47, 31, 34, 39, 23,
+                    -16, -27, 15, 6, 9, 17, 10, 5,
+                    -22, -23, -30, -16, -16, -23, -36, -32,
+                    -33, -28, -22, -43, -5, -32, -20, -41 },
+            { // King
+                    -74, -35, -18, -18, -11, 15, 4, -17,
+                    -12, 17, 14, 17, 17, 38, 23, 11,
+                    10, 17, 23, 15, 20, 45, 44, 13,
+                    -8, 22, 24, 27, 26, 33, 26, 3,
+                    -18, -4, 21, 24, 27, 23, 9, -11,
+                    -19, -3, 11, 21, 23, 16, 7, -9,
+                    -27, -11, 4, 13, 14, 4, -5, -17,
+                    -53, -34, -21, -11, -28, -14, -24, -43 }
+    };
+
+    // Material plus piece-square value of every piece on every square, indexed like the ChessBoard bitboards
+    // Black values are negative, so the board sums them into a single score from White's point of view
+    static final int[][] MG_SCORES = new int[12][64];
+    static final int[][] EG_SCORES = new int[12][64];
+
+    // Mobility: bonus per reachable square above a typical count, for knights, bishops, rooks and queens
+    private static final int[] MOBILITY_MG = { 0, 4, 5, 2, 1, 0 };
+    private static final int[] MOBILITY_EG = { 0, 4, 5, 4, 2, 0 };
+    private static final int[] MOBILITY_BASE = { 0, 4, 6, 7, 13, 0 };
+
+    // King safety: weight of each attacker type for every square it attacks next to the enemy King
+    private static final int[] KING_ATTACK_WEIGHTS = { 0, 2, 2, 3, 5, 0 };
+    private static final int PAWN_SHIELD_BONUS = 12;
+
+    static {
+        for (int type = 0; type < 6; type++) {
+            for (int sq = 0; sq < 64; sq++) {
+                MG_SCORES[type][sq] = MG_VALUES[type] + MG_TABLES[type][sq];
+                EG_SCORES[type][sq] = EG_VALUES[type] + EG_TABLES[type][sq];
+                MG_SCORES[type + 6][sq] = -(MG_VALUES[type] + MG_TABLES[type][sq ^ 56]);
+                EG_SCORES[type + 6][sq] = -(EG_VALUES[type] + EG_TABLES[type][sq ^ 56]);
+            }
+        }
+    }
+
+    private Evaluation() {
+    }
+
+    static int evaluate(Position position) {
+        ChessBoard board = position.getBoard();
+
+        // Incrementally updated material and piece-square values
+        int mg = board.getMiddlegameScore();
+        int eg = board.getEndgameScore();
+
+        // Mobility and king safety, White minus Black
+        long white = getActivity(position, ChessPiece.Color.WHITE);
+        long black = getActivity(position, ChessPiece.Color.BLACK);
+        mg += (int) (white >> 32) - (int) (black >> 32);
+        eg += (int) white - (int) black;
+
+        int phase = Math.min(board.getPhase(), MAX_PHASE);
+        int score = (mg * phase + eg * (MAX_PHASE - phase)) / MAX_PHASE;
+
+        return (position.getTurnColor() == ChessPiece.Color.WHITE) ? score : -score;
+    }
+
+    // Returns the mobility and king safety terms of one color, middlegame value in the upper 32 bits and endgame
+    // value in the lower 32 bits (so nothing is allocated)
+    private static long getActivity(Position position, ChessPiece.Color color) {
+        ChessBoard board = position.getBoard();
+        ChessPiece.Color enemy = color.next();
+        long occupancy = board.getOccupancy();
+        long own = board.getOccupancy(color);
+
+        // Squares attacked by enemy pawns do not count as mobility
+        long enemyPawns = board.getPieceSet(enemy, 'p');
+        long[] enemyPawnAttacks = Bitboards.PAWN_ATTACKS[(enemy == ChessPiece.Color.WHITE) ? 0 : 1];
+        long unsafe = own;
+        while (enemyPawns != 0) {
+            unsafe |= enemyPawnAttacks[Long.numberOfTrailingZeros(enemyPawns)];
+            enemyPawns &= enemyPawns - 1;
+        }
+
+        int enemyKingSq = Bitboards.square(position.getKingRow(enemy), position.getKingCol(enemy));
+        long kingZone = Bitboards.KING_ATTACKS[enemyKingSq] | (1L << enemyKingSq);
+        int mg = 0, eg = 0, attackUnits = 0, attackers = 0;
+
+        for (int type = 1; type <= 4; type++) {
+            long pieces = board.getPieceSet(color, ChessBoard.PIECE_TYPES.charAt(type));
+            while (pieces != 0) {
+                int sq = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+
+                long attacks;
+                if (type == 1) {
+                    attacks = Bitboards.KNIGHT_ATTACKS[sq];
+                } else if (type == 2) {
+                    attacks = Bitboards.bishopAttacks(sq, occupancy);
+                } else if (type == 3) {
+                    attacks = Bitboards.rookAttacks(sq, occupancy);
+                } else {
+                    attacks = Bitboards.queenAttacks(sq, occupancy);
+                }
+
+                int mobility = Long.bitCount(attacks & ~unsafe) - MOBILITY_BASE[type];
+                mg += MOBILITY_MG[type] * mobility;
+                eg += MOBILITY_EG[type] * mobility;
+
+                long zoneAttacks = attacks & kingZone;
+                if (zoneAttacks != 0) {
+                    attackers++;
+                    attackUnits += KING_ATTACK_WEIGHTS[type] * Long.bitCount(zoneAttacks);
+                }
+            }
+        }
+
+        // An attack on the King only becomes dangerous with several attackers, and grows faster than linearly
+        if (attackers >= 2 && board.getPieceSet(color, 'Q') != 0) {
+            mg += Math.min(attackUnits * attackUnits, 500);
+        }
+
+        // Own pawns in front of the King shelter it in the middlegame
+        int kingRow = position.getKingRow(color), kingCol = position.getKingCol(color);
+        int forward = (color == ChessPiece.Color.WHITE) ? -1 : 1;
+        long shield = 0;
+        for (int col = kingCol - 1; col <= kingCol + 1; col++) {
+            shield |= Bitboards.bit(kingRow + forward, col) | Bitboards.bit(kingRow + 2 * forward, col);
+        }
+        mg += PAWN_SHIELD_BONUS * Long.bitCount(shield & board.getPieceSet(color, 'p'));
+
+        return ((long) mg << 32) | (eg & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,213 @@
+package chess;
+
+// Reads and writes positions in Forsyth-Edwards Notation
+// e.g. rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1
+// Fields: piece placement from rank 8 to rank 1 (white pieces in upper case), side to move, castling rights,
+// en passant target square, halfmove clock and full move number (the last two can be left out)
+// NOTE: Castling rights are kept as the moved flags of the Kings and Rooks (see Position.getCastlingRights)
+final class Fen {
+    static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private Fen() {
+    }
+
+    // Returns the position described by a FEN string
+    static Position parse(String fen) throws ChessException {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4 || fields.length > 6) {
+            throw invalid(fen, "expected 4 to 6 fields");
+        }
+
+        ChessBoard board = new ChessBoard();
+        board.clearBoard();
+        parsePlacement(board, fields[0], fen);
+
+        ChessPiece.Color turnColor;
+        if (fields[1].equals("w")) {
+            turnColor = ChessPiece.Color.WHITE;
+        } else if (fields[1].equals("b")) {
+            turnColor = ChessPiece.Color.BLACK;
+        } else {
+            throw invalid(fen, "side to move must be w or b");
+        }
+
+        // Every King and Rook counts as moved unless a castling right says otherwise
+        for (int sq = 0; sq < 64; sq++) {
+            ChessPiece piece = board.getPiece(sq >> 3, sq & 7);
+            if (piece != null && (piece.getSymbol() == 'K' || piece.getSymbol() == 'R')) {
+                piece.moved = true;
+            }
+        }
+        if (!fields[2].equals("-")) {
+            for (int i = 0; i < fields[2].length(); i++) {
+                char right = fields[2].charAt(i);
+                int index = "KQkq".indexOf(right);
+                if (index == -1 || fields[2].indexOf(right) != i) {
+                    throw invalid(fen, "invalid castling rights " + fields[2]);
+                }
+                int row = (index < 2) ? 7 : 0;
+                int rookCol = (index % 2 == 0) ? 7 : 0;
+                ChessPiece.Color color = (row == 7) ? ChessPiece.Color.WHITE : ChessPiece.Color.BLACK;
+                ChessPiece king = board.getPiece(row, 4);
+                ChessPiece rook = board.getPiece(row, rookCol);
+                if (king == null || king.getSymbol() != 'K' || king.getColor() != color || rook == null
+                        || rook.getSymbol() != 'R' || rook.getColor() != color) {
+                    throw invalid(fen, "castling right " + right + " without its King and Rook");
+                }
+                king.moved = false;
+                rook.moved = false;
+            }
+        }
+
+        int doublePushCol = -1;
+        if (!fields[3].equals("-")) {
+            doublePushCol = parseEnPassant(board, turnColor, fields[3], fen);
+        }
+
+        int halfmoveClock = (fields.length > 4) ? parseNumber(fields[4], 0, fen) : 0;
+        int moveNumber = (fields.length > 5) ? parseNumber(fields[5], 1, fen) : 1;
+
+        // The side that just moved cannot have left its King in check
+        long enemyKing = board.getPieceSet(turnColor.next(), 'K');
+        int kingSq = Long.numberOfTrailingZeros(enemyKing);
+        if (board.isAttacked(kingSq >> 3, kingSq & 7, turnColor)) {
+            throw invalid(fen, "the side not to move is in check");
+        }
+
+        return new Position(board, turnColor, doublePushCol, halfmoveClock, moveNumber);
+    }
+
+    // Returns the FEN string of a position
+    static String format(Position position) {
+        ChessBoard board = position.getBoard();
+        StringBuilder fen = new StringBuilder(90);
+
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                ChessPiece piece = board.getPiece(row, col);
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char symbol = piece.getSymbol();
+                fen.append((piece.getColor() == ChessPiece.Color.WHITE) ? Character.toUpperCase(symbol)
+                        : Character.toLowerCase(symbol));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (row < 7) {
+                fen.append('/');
+            }
+        }
+
+        fen.append((position.getTurnColor() == ChessPiece.Color.WHITE) ? " w " : " b ");
+
+        int rights = position.getCastlingRights();
+        for (int i = 0; i < 4; i++) {
+            if ((rights & (1 << i)) != 0) {
+                fen.append("KQkq".charAt(i));
+            }
+        }
+        if (rights == 0) {
+            fen.append('-');
+        }
+
+        // The square a pawn that just moved two squares passed over, whether or not it can be captured
+        int sRow = position.getLastSRow(), eRow = position.getLastERow(), eCol = position.getLastECol();
+        ChessPiece lastMoved = (sRow == -1) ? null : board.getPiece(eRow, eCol);
+        if (lastMoved != null && lastMoved.getSymbol() == 'p' && Math.abs(eRow - sRow) == 2) {
+            fen.append(' ').append(ChessGame.getSquareName((sRow + eRow) / 2, eCol));
+        } else {
+            fen.append(" -");
+        }
+
+        return fen.append(' ').append(position.getHalfmoveClock()).append(' ').append(position.getMoveNumber())
+                .toString();
+    }
+
+    // Puts the pieces of the placement field on an empty board
+    private static void parsePlacement(ChessBoard board, String placement, String fen) throws ChessException {
+        String[] rows = placement.split("/", -1);
+        if (rows.length != 8) {
+            throw invalid(fen, "expected 8 ranks");
+        }
+
+        int[] kings = new int[2];
+        for (int row = 0; row < 8; row++) {
+            int col = 0;
+            for (int i = 0; i < rows[row].length(); i++) {
+                char c = rows[row].charAt(i);
+                if (c >= '1' && c <= '8') {
+                    col += c - '0';
+                    continue;
+                }
+
+                char symbol = (c == 'p' || c == 'P') ? 'p' : Character.toUpperCase(c);
+                if (ChessBoard.PIECE_TYPES.indexOf(symbol) == -1 || col > 7) {
+                    throw invalid(fen, "invalid rank " + rows[row]);
+                }
+                if (symbol == 'p' && (row == 0 || row == 7)) {
+                    throw invalid(fen, "pawn on the first or last rank");
+                }
+
+                ChessPiece.Color color = Character.isUpperCase(c) ? ChessPiece.Color.WHITE
+                        : ChessPiece.Color.BLACK;
+                if (symbol == 'K') {
+                    kings[color.ordinal()]++;
+                }
+                board.setPiece(row, col++, ChessPiece.create(color, symbol));
+            }
+            if (col != 8) {
+                throw invalid(fen, "invalid rank " + rows[row]);
+            }
+        }
+
+        if (kings[0] != 1 || kings[1] != 1) {
+            throw invalid(fen, "each side needs exactly one King");
+        }
+    }
+
+    // Returns the column of the pawn that just moved past the en passant square
+    private static int parseEnPassant(ChessBoard board, ChessPiece.Color turnColor, String square, String fen)
+            throws ChessException {
+        if (square.length() != 2 || square.charAt(0) < 'a' || square.charAt(0) > 'h') {
+            throw invalid(fen, "invalid en passant square " + square);
+        }
+
+        // White pawns pass over rank 3 (row 5), black pawns over rank 6 (row 2)
+        int col = square.charAt(0) - 'a';
+        int row = '8' - square.charAt(1);
+        int expectedRow = (turnColor == ChessPiece.Color.BLACK) ? 5 : 2;
+        int pawnRow = (turnColor == ChessPiece.Color.BLACK) ? 4 : 3;
+        int startRow = (turnColor == ChessPiece.Color.BLACK) ? 6 : 1;
+        ChessPiece pawn = board.getPiece(pawnRow, col);
+
+        if (row != expectedRow || pawn == null || pawn.getSymbol() != 'p' || pawn.getColor() == turnColor
+                || board.getPiece(row, col) != null || board.getPiece(startRow, col) != null) {
+            throw invalid(fen, "no pawn just moved past " + square);
+        }
+        return col;
+    }
+
+    private static int parseNumber(String field, int min, String fen) throws ChessException {
+        try {
+            int value = Integer.parseInt(field);
+            if (value >= min) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw invalid(fen, "invalid move counter " + field);
+    }
+
+    private static ChessException invalid(String fen, String reason) {
+        return new ChessException("Invalid FEN (" + reason + "): " + fen);
+    }
+}
@@ -0,0 +1,272 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary file of games, written by GameArchiveWriter. Moves are
+ * stored as packed moves (see Move) in 2 bytes each, so replaying a game makes
+ * its moves directly, without parsing SAN, and the offset table gives random
+ * access to any game. The file is memory-mapped (up to 2 GB).
+ *
+ * File layout (big-endian):
+ * <ul>
+ * <li>a 32-byte header: magic "CGAM", version, number of games, number of
+ * strings, offset of the string table (8) and of the offset table (8)</li>
+ * <li>the games: number of tags, then the string ids of the name and value of
+ * each tag, the result (index in RESULTS, 1 byte), the number of moves and
+ * the moves (2 bytes each). Numbers other than moves are written in 7-bit
+ * groups (1 byte below 128)</li>
+ * <li>the string table: the length and the UTF-8 bytes of every string</li>
+ * <li>the offset table: the offset of every game (8 bytes each)</li>
+ * </ul>
+ *
+ * Usage: java chess.GameArchive pack games.pgn games.cga
+ *        java chess.GameArchive unpack games.cga games.pgn
+ *        java chess.GameArchive replay games.cga
+ */
+public class GameArchive implements Closeable {
+    static final int MAGIC = 0x4347414D; // "CGAM"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final String[] RESULTS = { "*", "1-0", "0-1", "1/2-1/2" };
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int gameCount;
+    private final String[] strings;
+    private final int offsetTable;
+
+    /**
+     * Opens an archive file
+     *
+     * @param path the archive file
+     * @throws IOException if the file cannot be read or is not an archive
+     */
+    public GameArchive(Path path) throws IOException {
+        channel = FileChannel.open(path);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Archive file is larger than 2 GB: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a game archive: " + path);
+            }
+
+            gameCount = buffer.getInt(8);
+            offsetTable = (int) buffer.getLong(24);
+            if ((long) offsetTable + (long) gameCount * 8 > buffer.capacity()) {
+                throw new IOException("Truncated game archive: " + path);
+            }
+
+            // Tag names and values are shared by many games, so they are decoded once
+            strings = new String[buffer.getInt(12)];
+            ByteBuffer table = buffer.duplicate().position((int) buffer.getLong(16));
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[readVarint(table)];
+                table.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * Returns a game in the form read from PGN (moves in SAN, without check
+     * marks)
+     *
+     * @param index the index of the game (the first game is 1)
+     * @return the game
+     * @throws ChessException if the game holds an invalid move
+     */
+    public PgnGame getGame(int index) throws ChessException {
+        ByteBuffer game = seek(index);
+        Map<String, String> tags = readTags(game);
+        String result = RESULTS[game.get()];
+        int[] moves = readMoves(game);
+
+        Position position = new Position();
+        List<String> sanMoves = new ArrayList<>(moves.length);
+        for (int move : moves) {
+            checkMove(position, move);
+            sanMoves.add(SanWriter.toSan(position, move, false));
+            position.makeMove(move);
+        }
+        return new PgnGame(index, tags, sanMoves, result);
+    }
+
+    /**
+     * Replays a game
+     *
+     * @param index the index of the game (the first game is 1)
+     * @return a ChessGame after the last move of the game
+     * @throws ChessException if the game holds an invalid move
+     */
+    public ChessGame replay(int index) throws ChessException {
+        ChessGame game = new ChessGame();
+        for (int move : getMoves(index)) {
+            game.playMove(move);
+        }
+        return game;
+    }
+
+    // Returns the moves of a game as packed moves (see Move)
+    int[] getMoves(int index) {
+        ByteBuffer game = seek(index);
+        readTags(game);
+        game.get();
+        return readMoves(game);
+    }
+
+    // Replays a game on a bare Position (moves are only checked to be legal), the fastest way to its positions
+    Position replayPosition(int index) throws ChessException {
+        Position position = new Position();
+        for (int move : getMoves(index)) {
+            checkMove(position, move);
+            position.makeMove(move);
+        }
+        return position;
+    }
+
+    /**
+     * Writes every game in PGN, with check marks
+     *
+     * @param path the PGN file
+     * @throws IOException if the file cannot be written
+     */
+    public void writePgn(Path path) throws IOException {
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (int index = 1; index <= gameCount; index++) {
+                ByteBuffer game = seek(index);
+                Map<String, String> tags = readTags(game);
+                String result = RESULTS[game.get()];
+                int[] moves = readMoves(game);
+
+                Position position = new Position();
+                List<String> sanMoves = new ArrayList<>(moves.length);
+                for (int move : moves) {
+                    checkMove(position, move);
+                    sanMoves.add(SanWriter.toSan(position, move, true));
+                    position.makeMove(move);
+                }
+                out.write(PgnGame.format(tags, sanMoves, result));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Returns a view of the buffer positioned at the start of a game
+    private ByteBuffer seek(int index) {
+        if (index < 1 || index > gameCount) {
+            throw new ChessException("No game " + index + " in the archive");
+        }
+        return buffer.duplicate().position((int) buffer.getLong(offsetTable + (index - 1) * 8));
+    }
+
+    private Map<String, String> readTags(ByteBuffer game) {
+        int count = readVarint(game);
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = strings[readVarint(game)];
+            tags.put(name, strings[readVarint(game)]);
+        }
+        return tags;
+    }
+
+    private static int[] readMoves(ByteBuffer game) {
+        int[] moves = new int[readVarint(game)];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = game.getShort() & 0xFFFF;
+        }
+        return moves;
+    }
+
+    // Checks that a packed move read from the file is legal, so a damaged file cannot corrupt the position
+    private static void checkMove(Position position, int move) throws ChessException {
+        int sRow = Move.sRow(move), sCol = Move.sCol(move), eRow = Move.eRow(move), eCol = Move.eCol(move);
+        MoveStatus status = MoveValidator.getMoveStatus(position, position.getTurnColor(), sRow, sCol, eRow, eCol);
+        if (status != MoveStatus.LEGAL || (move >>> 12) > 4) {
+            throw new ChessException("Invalid move in archive: " + Move.toString(move & 0xFFF));
+        }
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java chess.GameArchive pack games.pgn games.cga");
+            System.err.println("       java chess.GameArchive unpack games.cga games.pgn");
+            System.err.println("       java chess.GameArchive replay games.cga");
+            return;
+        }
+
+        long start = System.nanoTime();
+        switch (args[0]) {
+            case "pack":
+                int incomplete = 0;
+                try (PgnReader reader = new PgnReader(Paths.get(args[1]));
+                        GameArchiveWriter writer = new GameArchiveWriter(Paths.get(args[2]))) {
+                    while (reader.hasNext()) {
+                        if (!writer.add(reader.next())) {
+                            incomplete++;
+                        }
+                    }
+                    System.out.printf("%d games packed (%d stopped at an invalid move)", writer.getGameCount(),
+                            incomplete);
+                }
+                System.out.printf(", %d bytes to %d bytes", Files.size(Paths.get(args[1])),
+                        Files.size(Paths.get(args[2])));
+                break;
+            case "unpack":
+                try (GameArchive archive = new GameArchive(Paths.get(args[1]))) {
+                    archive.writePgn(Paths.get(args[2]));
+                    System.out.printf("%d games unpacked", archive.getGameCount());
+                }
+                break;
+            case "replay":
+                try (GameArchive archive = new GameArchive(Paths.get(args[1]))) {
+                    long plies = 0;
+                    for (int i = 1; i <= archive.getGameCount(); i++) {
+                        plies += archive.replayPosition(i).getPly();
+                    }
+                    System.out.printf("%d games, %d plies replayed", archive.getGameCount(), plies);
+                }
+                break;
+            default:
+                System.err.println("Unknown command: " + args[0]);
+                return;
+        }
+        System.out.printf(" in %.3f s%n", (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,163 @@
+package chess;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes games to a game archive (see GameArchive). Each game is replayed
+ * once, so that its moves are stored as packed moves instead of SAN. Tag
+ * names and values are stored once per file in a string table, so the names
+ * of players and events repeated in every game cost a few bytes each.
+ *
+ * The games are written as they are added; the string and offset tables are
+ * written by close().
+ */
+public class GameArchiveWriter implements Closeable {
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private long offset = GameArchive.HEADER_BYTES;
+
+    private long[] gameOffsets = new long[1 << 10];
+    private int gameCount;
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    // Record of the current game, written in one piece to know its size
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(1 << 10);
+    private int[] moves = new int[256];
+
+    /**
+     * Creates an archive file (replacing any existing file)
+     *
+     * @param path the archive file
+     * @throws IOException if the file cannot be created
+     */
+    public GameArchiveWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        out.write(new byte[GameArchive.HEADER_BYTES]); // Written by close()
+    }
+
+    /**
+     * Adds a game read from PGN. A game with an invalid move is stored up to
+     * that move
+     *
+     * @param game the game
+     * @return true if every move of the game was stored, false otherwise
+     * @throws IOException if the archive cannot be written
+     */
+    public boolean add(PgnGame game) throws IOException {
+        ChessGame replay = new ChessGame();
+        int count = 0;
+        boolean complete = true;
+        for (String san : game.getMoves()) {
+            try {
+                if (count == moves.length) {
+                    moves = Arrays.copyOf(moves, count * 2);
+                }
+                moves[count] = replay.playMove(san);
+                count++;
+            } catch (ChessException e) {
+                complete = false;
+                break;
+            }
+        }
+
+        add(game.getTags(), game.getResult(), moves, count);
+        return complete;
+    }
+
+    // Adds a game given as packed moves (see Move)
+    void add(Map<String, String> tags, String result, int[] moves, int count) throws IOException {
+        record.reset();
+        writeVarint(record, tags.size());
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            writeVarint(record, getStringId(tag.getKey()));
+            writeVarint(record, getStringId(tag.getValue()));
+        }
+
+        int resultCode = Arrays.asList(GameArchive.RESULTS).indexOf(result);
+        record.write(Math.max(0, resultCode));
+
+        writeVarint(record, count);
+        for (int i = 0; i < count; i++) {
+            record.write(moves[i] >>> 8);
+            record.write(moves[i]);
+        }
+
+        if (gameCount == gameOffsets.length) {
+            gameOffsets = Arrays.copyOf(gameOffsets, gameCount * 2);
+        }
+        gameOffsets[gameCount++] = offset;
+        record.writeTo(out);
+        offset += record.size();
+    }
+
+    private int getStringId(String value) {
+        return stringIds.computeIfAbsent(value, v -> {
+            strings.add(v);
+            return strings.size() - 1;
+        });
+    }
+
+    // Writes an unsigned number in 7-bit groups, low group first, the high bit set on all but the last
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * Writes the string and offset tables and the header, and closes the file
+     *
+     * @throws IOException if the archive cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long stringTable = offset;
+            for (String value : strings) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                record.reset();
+                writeVarint(record, bytes.length);
+                record.write(bytes);
+                record.writeTo(out);
+                offset += record.size();
+            }
+
+            long offsetTable = offset;
+            for (int i = 0; i < gameCount; i++) {
+                out.writeLong(gameOffsets[i]);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(GameArchive.HEADER_BYTES);
+            header.putInt(GameArchive.MAGIC).putInt(GameArchive.VERSION).putInt(gameCount).putInt(strings.size())
+                    .putLong(stringTable).putLong(offsetTable).flip();
+            channel.write(header, 0);
+        } finally {
+            out.close();
+        }
+    }
+}
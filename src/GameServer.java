@@ -0,0 +1,523 @@
+package chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embedded HTTP and WebSocket server playing many games at once. Games are
+ * kept in memory and removed after a time without moves.
+ *
+ * Every connection runs on its own thread, a virtual thread when the JDK has
+ * them (Java 21 and later) and a pooled platform thread otherwise, so a
+ * blocked client only holds its own thread. The moves of a game are
+ * serialized, the moves of different games run in parallel.
+ *
+ * Requests (states are JSON objects, see GameSession.getState):
+ * <ul>
+ * <li>POST /games creates a game (the body can hold a starting FEN) and
+ * returns its state</li>
+ * <li>GET /games/{id} returns the state of a game</li>
+ * <li>POST /games/{id}/moves plays the move in SAN held by the body and
+ * returns the new state</li>
+ * <li>DELETE /games/{id} removes a game</li>
+ * <li>GET /games/{id}/ws upgrades to a WebSocket receiving the state after
+ * every move; text messages sent on it are played as moves in SAN</li>
+ * <li>GET /stats returns the number of games and connections, the move
+ * latency percentiles and the legal move cache statistics</li>
+ * <li>GET /metrics returns the move validation metrics as text (see
+ * Metrics)</li>
+ * </ul>
+ *
+ * Usage: java chess.GameServer [--port 8080] [--idle-minutes 30]
+ */
+public class GameServer implements Closeable {
+    private static final int MAX_LINE_BYTES = 8192;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int IDLE_TIMEOUT_MILLIS = 60_000; // Of HTTP connections between requests
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final ScheduledExecutorService cleaner;
+    private final long idleNanos; // Of games without moves
+    private final Map<String, GameSession> games = new ConcurrentHashMap<>();
+    private final Map<Socket, Boolean> sockets = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private volatile boolean running;
+
+    // A parsed HTTP request
+    private static final class Request {
+        String method;
+        String path;
+        final Map<String, String> headers = new HashMap<>(); // Names in lower case
+        String body = "";
+
+        String getHeader(String name) {
+            return headers.getOrDefault(name, "");
+        }
+    }
+
+    // Thrown for requests that cannot be parsed, answered with 400 or 413 before closing the connection
+    private static final class BadRequestException extends IOException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        BadRequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Creates a server listening on a port (call start to accept connections)
+     *
+     * @param port        the port (0 for any free port, see getPort)
+     * @param idleMinutes the minutes after which a game without moves is
+     *                    removed
+     * @throws IOException if the port cannot be opened
+     */
+    public GameServer(int port, int idleMinutes) throws IOException {
+        if (idleMinutes < 1) {
+            throw new ChessException("Invalid idle time: " + idleMinutes);
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port), 1024);
+        idleNanos = TimeUnit.MINUTES.toNanos(idleMinutes);
+        connections = newConnectionExecutor();
+        cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-server-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Returns an executor running every task on a new virtual thread, or on a cached pool of platform threads
+    // before Java 21
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // No virtual threads (or only as a preview feature that is not enabled, as on Java 17): every open
+            // connection, WebSocket watchers included, holds a platform thread while it waits for its next message,
+            // so the number of watchers is bounded by the threads the OS allows. WebSocket writes run as short
+            // tasks on this pool, so they only add threads while a write is in progress
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "game-server-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts accepting connections on a background thread
+     */
+    public void start() {
+        running = true;
+        Thread acceptor = new Thread(this::acceptConnections, "game-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        cleaner.scheduleWithFixedDelay(this::removeIdleGames, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Returns the port the server listens on
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of games in memory
+     *
+     * @return the number of games
+     */
+    public int getGameCount() {
+        return games.size();
+    }
+
+    /**
+     * Returns the move latency percentiles (time to play a move and send the
+     * new state to the WebSocket watchers of the game)
+     *
+     * @return the count, mean, p50, p99, p99.9 and maximum in microseconds
+     */
+    public String getMoveLatency() {
+        return moveLatency.toString();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        cleaner.shutdownNow();
+        for (Socket socket : sockets.keySet()) {
+            socket.close();
+        }
+        connections.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.put(socket, Boolean.TRUE);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void removeIdleGames() {
+        long now = System.nanoTime();
+        games.values().removeIf(session -> {
+            if (now - session.getLastAccess() < idleNanos) {
+                return false;
+            }
+            session.close();
+            return true;
+        });
+    }
+
+    // Answers the requests of a connection until it is closed (HTTP keep-alive) or upgraded to a WebSocket
+    private void serve(Socket socket) {
+        openConnections.incrementAndGet();
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(IDLE_TIMEOUT_MILLIS);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            while (running) {
+                Request request;
+                try {
+                    request = readRequest(in);
+                } catch (BadRequestException e) {
+                    writeResponse(out, e.status, error(e.getMessage()), false);
+                    return;
+                }
+                if (request == null) {
+                    return;
+                }
+
+                if (request.getHeader("upgrade").equalsIgnoreCase("websocket")) {
+                    upgrade(socket, in, out, request);
+                    return;
+                }
+
+                boolean keepAlive = !request.getHeader("connection").equalsIgnoreCase("close");
+                handle(request, out, keepAlive);
+                if (!keepAlive) {
+                    return;
+                }
+            }
+        } catch (SocketTimeoutException | SocketException e) {
+            // Idle or closed by the client or by close()
+        } catch (IOException e) {
+            // The client went away in the middle of a request
+        } finally {
+            sockets.remove(socket);
+            openConnections.decrementAndGet();
+        }
+    }
+
+    private void handle(Request request, OutputStream out, boolean keepAlive) throws IOException {
+        String[] parts = request.path.split("/");
+        int status = 200;
+        String body;
+
+        if (request.path.equals("/stats") && request.method.equals("GET")) {
+            body = getStats();
+        } else if (request.path.equals("/metrics") && request.method.equals("GET")) {
+            writeResponse(out, 200, "text/plain; charset=utf-8", Metrics.dump(), keepAlive);
+            return;
+        } else if (request.path.equals("/games") && request.method.equals("POST")) {
+            try {
+                String fen = request.body.trim();
+                ChessGame game = fen.isEmpty() ? new ChessGame() : ChessGame.fromFen(fen);
+                GameSession session = new GameSession(Long.toString(nextId.getAndIncrement()), game);
+                games.put(session.id, session);
+                status = 201;
+                body = session.getState();
+            } catch (ChessException e) {
+                status = 400;
+                body = error(e.getMessage());
+            }
+        } else if (parts.length >= 3 && parts.length <= 4 && parts[0].isEmpty() && parts[1].equals("games")) {
+            GameSession session = games.get(parts[2]);
+            String action = (parts.length == 4) ? parts[3] : "";
+            if (session == null) {
+                status = 404;
+                body = error("No game " + parts[2]);
+            } else if (action.isEmpty() && request.method.equals("GET")) {
+                body = session.getState();
+            } else if (action.isEmpty() && request.method.equals("DELETE")) {
+                games.remove(session.id);
+                session.close();
+                status = 204;
+                body = "";
+            } else if (action.equals("moves") && request.method.equals("POST")) {
+                try {
+                    body = play(session, request.body.trim());
+                } catch (ChessException e) {
+                    status = 400;
+                    body = error(e.getMessage());
+                }
+            } else {
+                status = 405;
+                body = error("Unsupported request " + request.method + " " + request.path);
+            }
+        } else {
+            status = 404;
+            body = error("Unknown path " + request.path);
+        }
+
+        writeResponse(out, status, body, keepAlive);
+    }
+
+    // Plays a move and records its latency
+    private String play(GameSession session, String san) throws ChessException {
+        long start = System.nanoTime();
+        String state = session.play(san);
+        moveLatency.record(System.nanoTime() - start);
+        return state;
+    }
+
+    // Completes the WebSocket handshake, then plays the moves received until the connection closes
+    private void upgrade(Socket socket, InputStream in, OutputStream out, Request request) throws IOException {
+        String[] parts = request.path.split("/");
+        GameSession session = (parts.length == 4 && parts[1].equals("games") && parts[3].equals("ws"))
+                ? games.get(parts[2])
+                : null;
+        String key = request.getHeader("sec-websocket-key");
+        if (session == null || key.isEmpty() || !request.method.equals("GET")) {
+            writeResponse(out, (session == null) ? 404 : 400, error("Cannot open a WebSocket on " + request.path),
+                    false);
+            return;
+        }
+
+        String response = "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + WebSocket.acceptKey(key) + "\r\n\r\n";
+        out.write(response.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        // Watchers can wait for moves for as long as the game lasts
+        socket.setSoTimeout(0);
+        WebSocket webSocket = new WebSocket(socket, in, out, connections);
+        session.watch(webSocket);
+        try {
+            String message;
+            while ((message = webSocket.readMessage()) != null) {
+                try {
+                    play(session, message.trim()); // The new state reaches this socket as a watcher
+                } catch (ChessException e) {
+                    webSocket.sendText(error(e.getMessage()));
+                }
+            }
+        } finally {
+            session.unwatch(webSocket);
+            webSocket.finish();
+        }
+    }
+
+    private String getStats() {
+        LegalMoveCache cache = LegalMoveCache.SHARED;
+        return String.format("{\"games\":%d,\"connections\":%d,\"moves\":%d,\"moveLatencyMicros\":"
+                + "{\"mean\":%.1f,\"p50\":%.1f,\"p99\":%.1f,\"p999\":%.1f,\"max\":%.1f},"
+                + "\"moveCache\":{\"size\":%d,\"capacity\":%d,\"hits\":%d,\"misses\":%d,\"evictions\":%d}}",
+                games.size(), openConnections.get(), moveLatency.getCount(), moveLatency.getMean() / 1e3,
+                moveLatency.getValueAtPercentile(50) / 1e3, moveLatency.getValueAtPercentile(99) / 1e3,
+                moveLatency.getValueAtPercentile(99.9) / 1e3, moveLatency.getMax() / 1e3, cache.size(),
+                cache.getCapacity(), cache.getHits(), cache.getMisses(), cache.getEvictions());
+    }
+
+    // Reads a request line, the headers and the body (Content-Length only), or returns null at the end of the
+    // stream before a request
+    private static Request readRequest(InputStream in) throws IOException {
+        String line = readLine(in, false);
+        if (line == null) {
+            return null;
+        }
+
+        String[] requestLine = line.split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new BadRequestException(400, "Invalid request line");
+        }
+        Request request = new Request();
+        request.method = requestLine[0];
+        int query = requestLine[1].indexOf('?');
+        request.path = (query == -1) ? requestLine[1] : requestLine[1].substring(0, query);
+
+        while (!(line = readLine(in, true)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0 || request.headers.size() > 100) {
+                throw new BadRequestException(400, "Invalid header");
+            }
+            request.headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+
+        if (!request.getHeader("transfer-encoding").isEmpty()) {
+            throw new BadRequestException(400, "Chunked bodies are not supported, send a Content-Length");
+        }
+        String length = request.getHeader("content-length");
+        if (!length.isEmpty()) {
+            int bytes;
+            try {
+                bytes = Integer.parseInt(length);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException(400, "Invalid Content-Length");
+            }
+            if (bytes < 0 || bytes > MAX_BODY_BYTES) {
+                throw new BadRequestException(413, "Body larger than " + MAX_BODY_BYTES + " bytes");
+            }
+            byte[] body = in.readNBytes(bytes);
+            if (body.length < bytes) {
+                return null;
+            }
+            request.body = new String(body, StandardCharsets.UTF_8);
+        }
+        return request;
+    }
+
+    // Reads a line ended by CRLF (or LF) as ISO-8859-1, or returns null at the end of the stream unless the line
+    // is required
+    private static String readLine(InputStream in, boolean required) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                if (required || line.length() > 0) {
+                    throw new BadRequestException(400, "Incomplete request");
+                }
+                return null;
+            }
+            if (line.length() == MAX_LINE_BYTES) {
+                throw new BadRequestException(413, "Request line or header too long");
+            }
+            line.append((char) b);
+        }
+        int end = line.length();
+        return (end > 0 && line.charAt(end - 1) == '\r') ? line.substring(0, end - 1) : line.toString();
+    }
+
+    private static void writeResponse(OutputStream out, int status, String body, boolean keepAlive)
+            throws IOException {
+        writeResponse(out, status, "application/json", body, keepAlive);
+    }
+
+    private static void writeResponse(OutputStream out, int status, String contentType, String body,
+            boolean keepAlive) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String headers = "HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+                + ((status == 204) ? ""
+                        : "Content-Type: " + contentType + "\r\nContent-Length: " + bytes.length + "\r\n")
+                + (keepAlive ? "" : "Connection: close\r\n") + "\r\n";
+        out.write(headers.getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 201:
+                return "Created";
+            case 204:
+                return "No Content";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 413:
+                return "Payload Too Large";
+            default:
+                return "Error";
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    // Returns a string as a JSON string literal
+    static String quote(String text) {
+        StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080, idleMinutes = 30;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--idle-minutes":
+                    idleMinutes = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Usage: java chess.GameServer [--port 8080] [--idle-minutes 30]");
+                    return;
+            }
+        }
+
+        GameServer server = new GameServer(port, idleMinutes);
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+
+        // Reports the move latency every minute until the JVM is stopped
+        while (true) {
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                break;
+            }
+            System.out.printf("%d games, moves: %s%n", server.getGameCount(), server.getMoveLatency());
+        }
+        server.close();
+    }
+}
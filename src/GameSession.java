@@ -0,0 +1,90 @@
+package chess;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// A game of the GameServer and the WebSocket connections watching it
+// A ChessGame is not synchronized, so every access goes through this session's lock; moves of different games
+// run in parallel. States are only queued to the watchers under the lock (WebSocket writes them with tasks of
+// its own), so a slow client never holds up the game
+final class GameSession {
+    final String id;
+    private final ChessGame game;
+    private final List<WebSocket> watchers = new CopyOnWriteArrayList<>();
+    private volatile long lastAccess = System.nanoTime();
+    private String status; // Of the current position (see computeStatus), updated by play
+
+    GameSession(String id, ChessGame game) {
+        this.id = id;
+        this.game = game;
+        status = computeStatus();
+    }
+
+    // Plays a move in SAN, sends the new state to the watchers and returns it (as JSON, see getState)
+    // Watchers receive the states in the order of the moves; those that fell behind are dropped
+    synchronized String play(String san) throws ChessException {
+        if (!status.equals("active")) {
+            throw new ChessException("The game is over");
+        }
+        game.makeMove(san);
+        status = computeStatus(); // Once per move: isCheckmate and isDraw are the costly part of a state
+        lastAccess = System.nanoTime();
+
+        String state = getState();
+        for (WebSocket watcher : watchers) {
+            if (!watcher.sendText(state)) {
+                watchers.remove(watcher); // Its connection thread sees the closed socket and ends
+            }
+        }
+        return state;
+    }
+
+    // Returns the state of the game as a JSON object: id, FEN, side to move, moves in SAN, check and status
+    // (active, checkmate, stalemate or draw)
+    synchronized String getState() {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"id\":").append(GameServer.quote(id));
+        json.append(",\"fen\":").append(GameServer.quote(game.toFen()));
+        json.append(",\"turn\":").append(GameServer.quote(game.getTurnColor().toString()));
+        json.append(",\"moves\":[");
+        List<String> moves = game.getMoves();
+        for (int i = 0; i < moves.size(); i++) {
+            json.append((i == 0) ? "" : ",").append(GameServer.quote(moves.get(i)));
+        }
+        json.append("],\"check\":").append(game.isCheck());
+        json.append(",\"status\":").append(GameServer.quote(status));
+        return json.append('}').toString();
+    }
+
+    // Adds a connection that receives the state after every move, starting with the current one
+    synchronized void watch(WebSocket watcher) {
+        if (watcher.sendText(getState())) {
+            watchers.add(watcher);
+        }
+    }
+
+    void unwatch(WebSocket watcher) {
+        watchers.remove(watcher);
+    }
+
+    // Closes the connections watching the game (when it is removed from the server), without waiting for them
+    synchronized void close() {
+        for (WebSocket watcher : watchers) {
+            watcher.close(1001);
+        }
+        watchers.clear();
+    }
+
+    // Returns the System.nanoTime of the creation or the last move of the game
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    // Returns the status of the current position: active, checkmate, stalemate or draw
+    private String computeStatus() {
+        if (game.isCheckmate()) {
+            return game.isCheck() ? "checkmate" : "stalemate";
+        }
+        return game.isDraw() ? "draw" : "active";
+    }
+}
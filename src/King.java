@@ -17,8 +17,8 @@ class King extends ChessPiece {
     }
 
     // Static check for kingside castling
-    static boolean pseudoKingsideCastling(ChessPiece[][] board, int sRow, int sCol, int eRow, int eCol) {
-        ChessPiece piece = board[sRow][sCol];
+    static boolean pseudoKingsideCastling(ChessBoard board, int sRow, int sCol, int eRow, int eCol) {
+        ChessPiece piece = board.getPiece(sRow, sCol);
 
         if (piece == null || piece.getSymbol() != 'K') {
             return false;
@@ -38,12 +38,12 @@ class King extends ChessPiece {
                 }
 
                 // Check if there is a Rook on h1 and that it hasn't moved
-                if (board[7][7] == null || board[7][7].getSymbol() != 'R' || board[7][7].moved) {
+                if (board.getPiece(7, 7) == null || board.getPiece(7, 7).getSymbol() != 'R' || board.getPiece(7, 7).moved) {
                     return false;
                 }
 
                 // Checks if there is a piece in the way
-                if (board[7][5] != null || board[7][6] != null) {
+                if (board.getPiece(7, 5) != null || board.getPiece(7, 6) != null) {
                     return false;
                 }
                 break;
@@ -55,12 +55,12 @@ class King extends ChessPiece {
                 }
 
                 // Check if there is a Rook on h7 and that it hasn't moved
-                if (board[0][7] == null || board[0][7].getSymbol() != 'R' || board[0][7].moved) {
+                if (board.getPiece(0, 7) == null || board.getPiece(0, 7).getSymbol() != 'R' || board.getPiece(0, 7).moved) {
                     return false;
                 }
 
                 // Checks if there is a piece in the way
-                if (board[0][5] != null || board[0][6] != null) {
+                if (board.getPiece(0, 5) != null || board.getPiece(0, 6) != null) {
                     return false;
                 }
                 break;
@@ -71,14 +71,14 @@ class King extends ChessPiece {
 
     // Return true if kingside castling is legal. False otherwise (does not check
     // for checks)
-    boolean legalKingsideCastling(ChessPiece[][] board, int sRow, int sCol, int eRow, int eCol) {
+    boolean legalKingsideCastling(ChessBoard board, int sRow, int sCol, int eRow, int eCol) {
         return pseudoKingsideCastling(board, sRow, sCol, eRow, eCol);
     }
 
     // Return true if kingside castling is legal. False otherwise (does not check
     // for checks)
-    static boolean pseudoQueensideCastling(ChessPiece[][] board, int sRow, int sCol, int eRow, int eCol) {
-        ChessPiece piece = board[sRow][sCol];
+    static boolean pseudoQueensideCastling(ChessBoard board, int sRow, int sCol, int eRow, int eCol) {
+        ChessPiece piece = board.getPiece(sRow, sCol);
 
         if (piece == null || piece.getSymbol() != 'K') {
             return false;
@@ -98,12 +98,12 @@ class King extends ChessPiece {
                 }
 
                 // Check if there is a Rook on a1 and that it hasn't moved
-                if (board[7][0] == null || board[7][0].getSymbol() != 'R' || board[7][0].moved) {
+                if (board.getPiece(7, 0) == null || board.getPiece(7, 0).getSymbol() != 'R' || board.getPiece(7, 0).moved) {
                     return false;
                 }
 
                 // Checks if there is a piece in the way
-                if (board[7][3] != null || board[7][2] != null) {
+                if (board.getPiece(7, 3) != null || board.getPiece(7, 2) != null || board.getPiece(7, 1) != null) {
                     return false;
                 }
                 break;
@@ -115,12 +115,12 @@ class King extends ChessPiece {
                 }
 
                 // Check if there is a Rook on a8 and that it hasn't moved
-                if (board[0][0] == null || board[0][0].getSymbol() != 'R' || board[0][0].moved) {
+                if (board.getPiece(0, 0) == null || board.getPiece(0, 0).getSymbol() != 'R' || board.getPiece(0, 0).moved) {
                     return false;
                 }
 
                 // Checks if there is a piece in the way
-                if (board[0][3] != null || board[0][2] != null) {
+                if (board.getPiece(0, 3) != null || board.getPiece(0, 2) != null || board.getPiece(0, 1) != null) {
                     return false;
                 }
                 break;
@@ -129,17 +129,23 @@ class King extends ChessPiece {
         return true;
     }
 
-    boolean legalQueensideCastling(ChessPiece[][] board, int sRow, int sCol, int eRow, int eCol) {
+    boolean legalQueensideCastling(ChessBoard board, int sRow, int sCol, int eRow, int eCol) {
         return pseudoQueensideCastling(board, sRow, sCol, eRow, eCol);
     }
 
     @Override
-    boolean isLegal(ChessPiece[][] board, int sRow, int sCol, int eRow, int eCol) throws ChessException {
-        checkStartAndEnd(board, sRow, sCol, eRow, eCol);
+    long getTargets(Position position, int sRow, int sCol) {
+        ChessBoard board = position.getBoard();
 
         // Able to move to any square 1 away
-        return (Math.abs(eRow - sRow) <= 1 && Math.abs(eCol - sCol) <= 1) ||
-                legalKingsideCastling(board, sRow, sCol, eRow, eCol) ||
-                legalQueensideCastling(board, sRow, sCol, eRow, eCol);
+        long targets = Bitboards.KING_ATTACKS[Bitboards.square(sRow, sCol)] & ~board.getOccupancy(PIECE_COLOR);
+
+        if (legalKingsideCastling(board, sRow, sCol, sRow, 6)) {
+            targets |= Bitboards.bit(sRow, 6);
+        }
+        if (legalQueensideCastling(board, sRow, sCol, sRow, 2)) {
+            targets |= Bitboards.bit(sRow, 2);
+        }
+        return targets;
     }
 }
@@ -16,10 +16,8 @@ class Knight extends ChessPiece {
     }
 
     @Override
-    boolean isLegal(ChessPiece[][] board, int sRow, int sCol, int eRow, int eCol) throws ChessException {
-        checkStartAndEnd(board, sRow, sCol, eRow, eCol);
-        
-        return (Math.abs(eRow - sRow) == 1 && Math.abs(eCol - sCol) == 2)
-                        || (Math.abs(eRow - sRow) == 2 && Math.abs(eCol - sCol) == 1);
+    long getTargets(Position position, int sRow, int sCol) {
+        return Bitboards.KNIGHT_ATTACKS[Bitboards.square(sRow, sCol)]
+                & ~position.getBoard().getOccupancy(PIECE_COLOR);
     }
 }
@@ -0,0 +1,97 @@
+package chess;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// A histogram of durations in nanoseconds that threads record into concurrently without locking
+// Buckets are log-linear (as HdrHistogram): values below 128 have their own bucket, larger values share a bucket
+// with the values of the same power of two and the same 6 bits after the highest one, so a percentile is within
+// 1/64 (1.6%) of the recorded value, for any duration, with a fixed array of 3712 counts
+final class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int BUCKETS = (64 - SUB_BITS) << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder(); // Adders, as every record updates them
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        total.increment();
+        sum.add(nanos);
+        if (nanos > max.get()) {
+            max.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    long getCount() {
+        return total.sum();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    double getMean() {
+        long count = total.sum();
+        return (count == 0) ? 0 : (double) sum.sum() / count;
+    }
+
+    // Returns the largest value of the bucket holding the given percentile (0 to 100), 0 if nothing was recorded
+    // NOTE: Records made during the call may or may not be counted
+    long getValueAtPercentile(double percentile) {
+        long count = total.sum();
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    private static int bucket(long value) {
+        if (value < (2 << SUB_BITS)) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    private static long highestValue(int bucket) {
+        if (bucket < (2 << SUB_BITS)) {
+            return bucket;
+        }
+        int shift = (bucket >> SUB_BITS) - 1;
+        long mantissa = (bucket & ((1 << SUB_BITS) - 1)) | (1 << SUB_BITS);
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    // Returns the count, mean, p50, p99, p99.9 and maximum in microseconds
+    @Override
+    public String toString() {
+        return String.format("count %d, mean %.1f us, p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                getCount(), getMean() / 1e3, getValueAtPercentile(50) / 1e3, getValueAtPercentile(99) / 1e3,
+                getValueAtPercentile(99.9) / 1e3, getMax() / 1e3);
+    }
+}
@@ -0,0 +1,211 @@
+package chess;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded cache of the legal moves of positions, indexed by Zobrist key and shared by every game and thread
+// Positions seen again (openings, popular lines, games replayed on a server) skip move generation: isCheckmate
+// reads the moves from here and the next move is validated against them (see ChessGame). Positions are only
+// stored when they come back, so games of new positions do not flush the popular ones
+// Layout: sets of 8 entries, the set chosen by the low bits of the key. A full set evicts with CLOCK: each entry has
+// a reference bit set by every hit, and the hand of the set skips (and clears) referenced entries, so entries hit
+// since the hand last passed stay, and the others go in the order they were stored
+// NOTE: Entries are immutable and published with release/acquire, so readers need no lock. Two threads storing in
+// the same set at once can overwrite each other's entry; the loser is simply not cached. Like the transposition
+// table, a hit trusts the 64-bit key
+final class LegalMoveCache {
+    private static final int WAYS = 8;
+    private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(Entry[].class);
+
+    // Number of entries of the cache shared by the games, from -Dchess.moveCache (0 disables the cache)
+    static final LegalMoveCache SHARED = new LegalMoveCache(Integer.getInteger("chess.moveCache", 1 << 16));
+
+    private static final class Entry {
+        final long key;
+        final short[] moves; // Packed moves (see Move), which fit in 15 bits
+        boolean referenced; // Set by hits, cleared by the hand (races only cost an early or late eviction)
+
+        Entry(long key, short[] moves) {
+            this.key = key;
+            this.moves = moves;
+        }
+    }
+
+    private final Entry[] entries;
+    private final long[] keys; // Keys of the entries, so a lookup reads one cache line per set (checked on the entry)
+    private final int[] hands; // Next way the CLOCK hand of each set looks at
+    private final long[] seen; // Keys that missed once (see admit)
+    private final int setMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Creates a cache holding up to the given number of positions (rounded down to a power of 2, at least 8)
+    // A capacity of 0 creates a cache that stores nothing
+    LegalMoveCache(int capacity) {
+        if (capacity < 0) {
+            throw new ChessException("Invalid move cache size: " + capacity);
+        }
+        int sets = (capacity == 0) ? 0 : Integer.highestOneBit(Math.max(capacity, WAYS)) / WAYS;
+        entries = new Entry[sets * WAYS];
+        keys = new long[sets * WAYS];
+        hands = new int[sets];
+        seen = new long[sets * WAYS];
+        setMask = sets - 1;
+    }
+
+    // Returns the legal moves of the side to move as packed moves, from the cache or generated and stored, or null
+    // if the position is not stored yet
+    // A position is stored the second time it misses (its key is remembered the first time, in a table as large as
+    // the cache): generating every move costs more than finding one (MoveValidator.hasLegalMove), which is all
+    // that positions seen once need
+    // Hits and misses count the calls of this method
+    short[] getLegalMoves(Position position) {
+        long key = position.getKey();
+        short[] moves = get(key);
+        if (moves != null) {
+            hits.increment();
+            return moves;
+        }
+
+        misses.increment();
+        if (!admit(key)) {
+            return null;
+        }
+
+        int[] generated = new int[256];
+        int count = MoveValidator.generateMoves(position, generated, false);
+        moves = new short[count];
+        for (int i = 0; i < count; i++) {
+            moves[i] = (short) generated[i];
+        }
+        put(key, moves);
+        return moves;
+    }
+
+    // Returns true if the key missed before (since another key took its slot), otherwise remembers it
+    // Other bits of the key than the set index choose the slot, so keys of a set spread over the table
+    private boolean admit(long key) {
+        if (seen.length == 0) {
+            return false;
+        }
+        int slot = (int) (key >>> 32) & (seen.length - 1);
+        if (seen[slot] == key) {
+            return true;
+        }
+        seen[slot] = key; // Races only lose a key, which is admitted one miss later
+        return false;
+    }
+
+    // Returns the moves stored for a position key, or null if there are none
+    short[] get(long key) {
+        if (entries.length == 0) {
+            return null;
+        }
+
+        int base = ((int) key & setMask) * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            if (keys[i] != key) {
+                continue;
+            }
+            Entry entry = (Entry) ENTRIES.getAcquire(entries, i);
+            if (entry != null && entry.key == key) {
+                if (!entry.referenced) {
+                    entry.referenced = true; // Only written when it changes, so hot entries stay in every core's cache
+                }
+                return entry.moves;
+            }
+        }
+        return null;
+    }
+
+    // Stores the moves of a position key (the array must not be changed afterwards)
+    void put(long key, short[] moves) {
+        if (entries.length == 0) {
+            return;
+        }
+
+        int set = (int) key & setMask;
+        int base = set * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            Entry entry = (Entry) ENTRIES.getAcquire(entries, i);
+            if (entry == null) {
+                store(i, key, moves);
+                return;
+            } else if (entry.key == key) {
+                return; // Stored by another thread meanwhile
+            }
+        }
+
+        // Every way is used: the hand clears reference bits until it finds an entry without one (at most one turn)
+        int hand = hands[set];
+        while (true) {
+            Entry entry = (Entry) ENTRIES.getAcquire(entries, base + hand);
+            if (entry != null && entry.referenced) { // Null after a clear meanwhile
+                entry.referenced = false;
+                hand = (hand + 1) % WAYS;
+                continue;
+            }
+            store(base + hand, key, moves);
+            hands[set] = (hand + 1) % WAYS;
+            if (entry != null) {
+                evictions.increment();
+            }
+            return;
+        }
+    }
+
+    private void store(int index, long key, short[] moves) {
+        ENTRIES.setRelease(entries, index, new Entry(key, moves));
+        keys[index] = key;
+    }
+
+    void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            ENTRIES.setRelease(entries, i, null);
+            keys[i] = 0;
+            seen[i] = 0;
+        }
+    }
+
+    int getCapacity() {
+        return entries.length;
+    }
+
+    // Returns the number of positions stored (counted, so only for statistics)
+    int size() {
+        int size = 0;
+        for (int i = 0; i < entries.length; i++) {
+            if (ENTRIES.getAcquire(entries, i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Returns the share of getLegalMoves calls that were hits (0 without calls)
+    double getHitRate() {
+        long found = hits.sum(), lookups = found + misses.sum();
+        return (lookups == 0) ? 0 : (double) found / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d positions, %d hits, %d misses (%.1f%% hits), %d evictions", size(),
+                getCapacity(), getHits(), getMisses(), getHitRate() * 100, getEvictions());
+    }
+}
@@ -0,0 +1,223 @@
+package chess;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Counts and times the move validation hot paths: each operation has a call
+ * count, a failure count (calls ending with an exception) and a latency
+ * histogram, and emits chess.Operation Flight Recorder events when a
+ * recording enables them.
+ *
+ * Metrics are off unless the JVM starts with -Dchess.metrics=true. The flag is
+ * read once into a constant, so when it is off the JIT removes the
+ * instrumentation and the code runs as if it had none. When it is on, the
+ * metrics are registered as the MBean chess:type=Metrics (for JConsole or
+ * any JMX client) and can be printed with dump().
+ *
+ * Usage: java -Dchess.metrics=true chess.Metrics [PGN file] replays the games
+ * of a file (or the benchmark games) and prints the metrics
+ */
+public final class Metrics {
+    /**
+     * True if the JVM was started with -Dchess.metrics=true
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("chess.metrics");
+
+    static final String OBJECT_NAME = "chess:type=Metrics";
+
+    static final MetricsTimer MAKE_MOVE = new MetricsTimer("ChessGame.makeMove");
+    static final MetricsTimer RESOLVE_MOVE = new MetricsTimer("ChessGame.resolveMove");
+    static final MetricsTimer LEGAL_MOVES = new MetricsTimer("MoveValidator.getLegalMoves");
+    static final MetricsTimer IS_CHECK = new MetricsTimer("ChessGame.isCheck");
+    static final MetricsTimer COPY_BOARD = new MetricsTimer("ChessGame.getCopyBoard");
+
+    private static final MetricsTimer[] TIMERS = { MAKE_MOVE, RESOLVE_MOVE, LEGAL_MOVES, IS_CHECK, COPY_BOARD };
+
+    // Attributes of each timer in the MBean (<timer name>.<attribute>), latencies in microseconds
+    private static final String[] ATTRIBUTES = { "count", "failures", "meanMicros", "p50Micros", "p99Micros",
+            "p999Micros", "maxMicros" };
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                System.err.println("Metrics MBean not registered: " + e.getMessage());
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the metrics as text, one line per operation: calls, failures,
+     * then the mean, p50, p99, p99.9 and maximum latency in microseconds
+     *
+     * @return the metrics (only a note when metrics are off)
+     */
+    public static String dump() {
+        if (!ENABLED) {
+            return "Metrics are off (start the JVM with -Dchess.metrics=true)\n";
+        }
+
+        StringBuilder text = new StringBuilder(String.format("%-28s %12s %10s %10s %10s %10s %10s %10s%n",
+                "operation", "calls", "failures", "mean us", "p50 us", "p99 us", "p99.9 us", "max us"));
+        for (MetricsTimer timer : TIMERS) {
+            LatencyHistogram histogram = timer.histogram;
+            text.append(String.format("%-28s %12d %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n", timer.name,
+                    histogram.getCount(), timer.failures.sum(), histogram.getMean() / 1e3,
+                    histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                    histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMax() / 1e3));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Clears every count and histogram (records made during the call may or
+     * may not be kept)
+     */
+    public static void reset() {
+        for (MetricsTimer timer : TIMERS) {
+            timer.histogram.reset();
+            timer.failures.reset();
+        }
+    }
+
+    // Returns an attribute of the MBean (e.g. ChessGame.makeMove.p99Micros)
+    private static Object getAttribute(String attribute) throws AttributeNotFoundException {
+        int dot = attribute.lastIndexOf('.');
+        String name = (dot == -1) ? "" : attribute.substring(0, dot);
+        for (MetricsTimer timer : TIMERS) {
+            if (!timer.name.equals(name)) {
+                continue;
+            }
+            LatencyHistogram histogram = timer.histogram;
+            switch (attribute.substring(dot + 1)) {
+                case "count":
+                    return histogram.getCount();
+                case "failures":
+                    return timer.failures.sum();
+                case "meanMicros":
+                    return histogram.getMean() / 1e3;
+                case "p50Micros":
+                    return histogram.getValueAtPercentile(50) / 1e3;
+                case "p99Micros":
+                    return histogram.getValueAtPercentile(99) / 1e3;
+                case "p999Micros":
+                    return histogram.getValueAtPercentile(99.9) / 1e3;
+                case "maxMicros":
+                    return histogram.getMax() / 1e3;
+                default:
+                    break;
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    // Read-only attributes for every timer, and the dump and reset operations
+    private static final class MBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            return Metrics.getAttribute(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, Metrics.getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Left out, as the JMX contract asks
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            switch (action) {
+                case "dump":
+                    return dump();
+                case "reset":
+                    reset();
+                    return null;
+                default:
+                    throw new ReflectionException(new NoSuchMethodException(action), "Unknown operation " + action);
+            }
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (MetricsTimer timer : TIMERS) {
+                for (String attribute : ATTRIBUTES) {
+                    String type = attribute.endsWith("Micros") ? "double" : "long";
+                    attributes.add(new MBeanAttributeInfo(timer.name + "." + attribute, type, attribute, true,
+                            false, false));
+                }
+            }
+            MBeanOperationInfo[] operations = {
+                    new MBeanOperationInfo("dump", "Metrics as text", new MBeanParameterInfo[0], "java.lang.String",
+                            MBeanOperationInfo.INFO),
+                    new MBeanOperationInfo("reset", "Clears the metrics", new MBeanParameterInfo[0], "void",
+                            MBeanOperationInfo.ACTION) };
+            return new MBeanInfo(Metrics.class.getName(), "Move validation metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, operations, null);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String[]> games = new ArrayList<>();
+        if (args.length > 0) {
+            try (Stream<PgnGame> stream = PgnReader.stream(Paths.get(args[0]))) {
+                stream.forEach(game -> games.add(game.getMoves().toArray(new String[0])));
+            }
+        } else {
+            for (String game : Benchmark.GAMES) {
+                games.add(game.split(" "));
+            }
+        }
+
+        for (String[] moves : games) {
+            ChessGame game = new ChessGame();
+            try {
+                for (String move : moves) {
+                    game.makeMove(move);
+                    game.isCheckmate();
+                }
+            } catch (ChessException e) {
+                // Counted as a failure, the rest of the game is skipped
+            }
+        }
+        System.out.print(dump());
+    }
+}
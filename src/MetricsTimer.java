@@ -0,0 +1,51 @@
+package chess;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.EventType;
+
+// Counts and times an operation (see Metrics): a latency histogram, a failure count and Flight Recorder events
+// The calls are guarded by Metrics.ENABLED, a constant, so they are compiled away when metrics are off
+final class MetricsTimer {
+    // Flight Recorder is left alone when metrics are off
+    private static final EventType EVENT_TYPE = Metrics.ENABLED ? EventType.getEventType(OperationEvent.class) : null;
+
+    final String name;
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final LongAdder failures = new LongAdder();
+
+    MetricsTimer(String name) {
+        this.name = name;
+    }
+
+    // Returns the start time to pass to stop, 0 when metrics are off
+    static long start() {
+        return Metrics.ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Records an operation started at the time returned by start
+    void stop(long start) {
+        if (!Metrics.ENABLED) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        histogram.record(nanos);
+
+        // EventType.isEnabled is true only while a recording enables the event
+        if (EVENT_TYPE.isEnabled()) {
+            OperationEvent event = new OperationEvent();
+            event.operation = name;
+            event.nanos = nanos;
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+    }
+
+    // Records an operation that ended with an exception (also timed by stop)
+    void fail() {
+        if (Metrics.ENABLED) {
+            failures.increment();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package chess;
+
+// Static helpers for moves packed into an int
+// Bits 0-5: start square, bits 6-11: end square, bits 12-14: promotion piece (index in ChessBoard.PIECE_TYPES, 0 if none)
+// NOTE: Squares use the Bitboards layout (row * 8 + col). A packed move fits in 16 bits
+final class Move {
+    static final int NONE = 0; // a8 to a8, never a valid move
+
+    private Move() {
+    }
+
+    static int encode(int sRow, int sCol, int eRow, int eCol, char promotion) {
+        int promotionIndex = (promotion == 0) ? 0 : ChessBoard.PIECE_TYPES.indexOf(promotion);
+        return Bitboards.square(sRow, sCol) | (Bitboards.square(eRow, eCol) << 6) | (promotionIndex << 12);
+    }
+
+    static int sRow(int move) {
+        return (move >> 3) & 7;
+    }
+
+    static int sCol(int move) {
+        return move & 7;
+    }
+
+    static int eRow(int move) {
+        return (move >> 9) & 7;
+    }
+
+    static int eCol(int move) {
+        return (move >> 6) & 7;
+    }
+
+    // Returns the symbol of the promotion piece, or 0 if the move is not a promotion
+    static char promotion(int move) {
+        int index = (move >> 12) & 7;
+        return (index == 0) ? 0 : ChessBoard.PIECE_TYPES.charAt(index);
+    }
+
+    // Returns the move in coordinate notation (e.g. e2e4, e7e8q)
+    static String toString(int move) {
+        String name = ChessGame.getSquareName(sRow(move), sCol(move)) + ChessGame.getSquareName(eRow(move), eCol(move));
+        char promotion = promotion(move);
+        return (promotion == 0) ? name : name + Character.toLowerCase(promotion);
+    }
+}
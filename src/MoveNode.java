@@ -0,0 +1,64 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A move of a game tree (see ChessGame). The children of a node are the moves played from the position after it:
+// the first child continues the main line, the others start variations
+// NOTE: The undo record of a node is the entry of the Position undo stack at its depth, so going back and forth
+// along the tree only costs a makeMove or an unmakeMove
+final class MoveNode {
+    final int move; // Packed move (see Move), Move.NONE for the root
+    final String san; // The move as it was entered
+    final MoveNode parent;
+
+    private List<MoveNode> children; // Created with the first child
+    private int selected; // Index of the child redo follows (the last one played or returned from)
+
+    MoveNode(int move, String san, MoveNode parent) {
+        this.move = move;
+        this.san = san;
+        this.parent = parent;
+    }
+
+    List<MoveNode> getChildren() {
+        return (children == null) ? List.of() : children;
+    }
+
+    // Returns the child playing the move, or null if the move was not played from here yet
+    MoveNode getChild(int move) {
+        for (MoveNode child : getChildren()) {
+            if (child.move == move) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    // Adds a move played from here: the first one continues the main line, the next ones are variations
+    MoveNode addChild(int move, String san) {
+        if (children == null) {
+            children = new ArrayList<>(1);
+        }
+        MoveNode child = new MoveNode(move, san, this);
+        children.add(child);
+        return child;
+    }
+
+    // Returns the child redo follows, or null at the end of a line
+    MoveNode getSelected() {
+        return (children == null) ? null : children.get(selected);
+    }
+
+    void select(MoveNode child) {
+        selected = children.indexOf(child);
+    }
+
+    // Makes a child the first one, so its line becomes the main line from here
+    void promote(MoveNode child) {
+        MoveNode redo = getSelected();
+        children.remove(child);
+        children.add(0, child);
+        select(redo);
+    }
+}
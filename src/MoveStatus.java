@@ -0,0 +1,33 @@
+package chess;
+
+// Result of validating a move, returned instead of throwing so that bulk move generation never builds exceptions
+// The message is the one of the ChessException thrown for the move at the public boundary
+enum MoveStatus {
+    LEGAL(null),
+    OUT_OF_BOUNDS("Invalid Move: Out of bounds"),
+    SAME_SQUARE("Invalid Move: Same square"),
+    NO_PIECE("Invalid Move: No piece"),
+    WRONG_COLOR("Invalid Move: Wrong Piece Color"),
+    SAME_COLOR_CAPTURE("Invalid Move: Captured piece is same color"),
+    UNREACHABLE("Invalid Move"), // The piece cannot move to the end square
+    KING_IN_CHECK("Invalid Move: King is in check");
+
+    private final String message;
+
+    MoveStatus(String message) {
+        this.message = message;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    boolean isLegal() {
+        return this == LEGAL;
+    }
+
+    // Returns the exception describing why the move was rejected
+    ChessException toException() {
+        return new ChessException(message);
+    }
+}
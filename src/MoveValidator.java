@@ -4,128 +4,296 @@ import java.util.LinkedList;
 import java.util.List;
 
 public class MoveValidator {
+    // Pieces a pawn can be promoted to
+    static final char[] PROMOTIONS = { 'Q', 'R', 'B', 'N' };
+
     /**
      * Returns a list of all possible moves given the color in the format [sRow,
-     * sCol, eRow, eCol]
+     * sCol, eRow, eCol, promotion]
+     * promotion is the symbol of the promotion piece (0 if the move is not a
+     * promotion). A promotion is listed once per piece
+     * NOTE: Only the squares each piece can reach (ChessPiece.getTargets) are
+     * validated, instead of every start square against every end square
      * 
      * @param color the color for which the legal moves is for
-     * @return a list of all possible moves in the format [sRow, sCol, eRow, eCol]
+     * @return a list of all possible moves in the format [sRow, sCol, eRow, eCol,
+     *         promotion]
      */
-    static List<int[]> getLegalMoves(ChessPiece[][] board, ChessPiece.Color color) {
+    static List<int[]> getLegalMoves(Position position, ChessPiece.Color color) {
+        long start = MetricsTimer.start();
         List<int[]> list = new LinkedList<>();
+        ChessBoard board = position.getBoard();
 
-        for (int sRow = 0; sRow < board.length; sRow++) {
-            for (int sCol = 0; sCol < board[0].length; sCol++) {
-                if (board[sRow][sCol] != null && board[sRow][sCol].getColor() == color) {
-                    // Check if there is a valid move with this piece
-                    for (int eRow = 0; eRow < board.length; eRow++) {
-                        for (int eCol = 0; eCol < board[0].length; eCol++) {
-                            try {
-                                if (isValidMove(board, color, sRow, sCol, eRow, eCol)) {
-                                    int[] temp = new int[] { sRow, sCol, eRow, eCol };
-                                    list.add(temp);
-                                }
-                            } catch (ChessException e) {
-                                continue;
-                            }
+        long pieces = board.getOccupancy(color);
+        while (pieces != 0) {
+            int sSq = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
 
-                        }
+            int sRow = sSq >> 3, sCol = sSq & 7;
+            ChessPiece piece = board.getPiece(sRow, sCol);
+            long targets = piece.getTargets(position, sRow, sCol);
+
+            // Check which of the reachable squares are valid moves
+            while (targets != 0) {
+                int eSq = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+
+                int eRow = eSq >> 3, eCol = eSq & 7;
+                if (!getCheckStatus(position, color, sRow, sCol, eRow, eCol).isLegal()) {
+                    continue;
+                }
+
+                if (piece.getSymbol() == 'p' && (eRow == 0 || eRow == 7)) {
+                    for (char promotion : PROMOTIONS) {
+                        list.add(new int[] { sRow, sCol, eRow, eCol, promotion });
                     }
+                } else {
+                    list.add(new int[] { sRow, sCol, eRow, eCol, 0 });
                 }
             }
         }
 
+        Metrics.LEGAL_MOVES.stop(start);
         return list;
     }
 
-    // Returns true if a move is valid. Returns false otherwise
-    static boolean isValidMove(ChessPiece[][] board, ChessPiece.Color currTurnColor, int sRow, int sCol, int eRow,
-            int eCol) throws ChessException {
-        // Check if move (end square) is out of bounds
-        if (eRow < 0 || eRow >= board.length || eCol < 0 || eCol >= board.length) {
-            throw new ChessException("Invalid Move: Out of bounds");
-        }
+    /**
+     * Returns true if the color has at least one valid move. Stops at the first
+     * one found
+     * 
+     * @param color the color for which the legal moves is for
+     * @return true if there is a valid move, false otherwise
+     */
+    static boolean hasLegalMove(Position position, ChessPiece.Color color) {
+        ChessBoard board = position.getBoard();
 
-        // Check if start square is equal to end square
-        if (sRow == eRow && sCol == eCol) {
-            throw new ChessException("Invalid Move: Same square");
+        long pieces = board.getOccupancy(color);
+        while (pieces != 0) {
+            int sSq = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+
+            int sRow = sSq >> 3, sCol = sSq & 7;
+            long targets = board.getPiece(sRow, sCol).getTargets(position, sRow, sCol);
+
+            while (targets != 0) {
+                int eSq = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+
+                if (getCheckStatus(position, color, sRow, sCol, eSq >> 3, eSq & 7).isLegal()) {
+                    return true;
+                }
+            }
         }
 
-        // Check if there is a piece on starting square
-        ChessPiece piece = board[sRow][sCol];
-        if (piece == null) {
-            throw new ChessException("Invalid Move: No piece");
+        return false;
+    }
+
+    /**
+     * Writes the legal moves of the side to move into the array as packed moves
+     * (see Move). Unlike getLegalMoves, nothing is allocated
+     * 
+     * @param moves        the array receiving the moves (256 entries are always
+     *                     enough)
+     * @param capturesOnly if true, only captures and promotions are generated
+     *                     (promotions to a Queen only)
+     * @return the number of moves written
+     */
+    static int generateMoves(Position position, int[] moves, boolean capturesOnly) {
+        ChessBoard board = position.getBoard();
+        ChessPiece.Color color = position.getTurnColor();
+        long enemies = board.getOccupancy(color.next());
+        long lastRows = Bitboards.ROW_0 | (Bitboards.ROW_0 << 56);
+        long[] pawnAttacks = Bitboards.PAWN_ATTACKS[(color == ChessPiece.Color.WHITE) ? 0 : 1];
+        int count = 0;
+
+        long pieces = board.getOccupancy(color);
+        while (pieces != 0) {
+            int sSq = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+
+            int sRow = sSq >> 3, sCol = sSq & 7;
+            ChessPiece piece = board.getPiece(sRow, sCol);
+            boolean isPawn = piece.getSymbol() == 'p';
+            long targets = piece.getTargets(position, sRow, sCol);
+
+            if (capturesOnly) {
+                // Diagonal pawn moves are always captures (en passant included)
+                targets &= isPawn ? (enemies | lastRows | pawnAttacks[sSq]) : enemies;
+            }
+
+            while (targets != 0) {
+                int eSq = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+
+                int eRow = eSq >> 3, eCol = eSq & 7;
+                if (!getCheckStatus(position, color, sRow, sCol, eRow, eCol).isLegal()) {
+                    continue;
+                }
+
+                if (isPawn && (eRow == 0 || eRow == 7)) {
+                    for (char promotion : PROMOTIONS) {
+                        moves[count++] = Move.encode(sRow, sCol, eRow, eCol, promotion);
+                        if (capturesOnly) {
+                            break;
+                        }
+                    }
+                } else {
+                    moves[count++] = Move.encode(sRow, sCol, eRow, eCol, (char) 0);
+                }
+            }
         }
 
-        // Check if starting piece is of the right color
-        if (piece.getColor() != currTurnColor) {
-            throw new ChessException("Invalid Move: Wrong Piece Color");
+        return count;
+    }
+
+    // Returns true if a move is valid. Returns false if the piece cannot reach the end square
+    // Throws a ChessException with the reason otherwise
+    static boolean isValidMove(Position position, ChessPiece.Color currTurnColor, int sRow, int sCol, int eRow,
+            int eCol) throws ChessException {
+        return toResult(getMoveStatus(position, currTurnColor, sRow, sCol, eRow, eCol));
+    }
+
+    // Returns true if a move is valid. Returns false otherwise
+    // Does not check if it is check
+    static boolean pseudoValidate(Position position, ChessPiece.Color color, int sRow, int sCol, int eRow, int eCol)
+            throws ChessException {
+        return toResult(getPseudoMoveStatus(position, color, sRow, sCol, eRow, eCol));
+    }
+
+    /**
+     * Validates a move without throwing. Used by move generation, where most
+     * candidate moves are rejected
+     * 
+     * @param position the position the move is made in
+     * @param color    the color making the move
+     * @return LEGAL if the move is valid, the reason it is not otherwise
+     */
+    static MoveStatus getMoveStatus(Position position, ChessPiece.Color color, int sRow, int sCol, int eRow,
+            int eCol) {
+        MoveStatus status = getPseudoMoveStatus(position, color, sRow, sCol, eRow, eCol);
+        if (status != MoveStatus.LEGAL) {
+            return status;
         }
 
-        // Check if there is a piece of the same color on the end square
-        if (board[eRow][eCol] != null && board[eRow][eCol].getColor() == currTurnColor) {
-            throw new ChessException("Invalid Move: Captured piece is same color");
+        return getCheckStatus(position, color, sRow, sCol, eRow, eCol);
+    }
+
+    // Returns KING_IN_CHECK if a pseudo-legal move (one of the piece's targets) leaves the King in check,
+    // LEGAL otherwise
+    private static MoveStatus getCheckStatus(Position position, ChessPiece.Color color, int sRow, int sCol,
+            int eRow, int eCol) {
+        ChessBoard board = position.getBoard();
+        ChessPiece.Color enemy = color.next();
+        long endBit = Bitboards.bit(eRow, eCol);
+        boolean isKing = board.getPiece(sRow, sCol).getSymbol() == 'K';
+
+        // The attack maps are those of the side to move. For the other side, make the move and look at the King
+        if (color != position.getTurnColor()) {
+            if (isKing && Math.abs(eCol - sCol) == 2 && (ChessGame.isCheck(board, color, sRow, sCol)
+                    || board.isAttacked(sRow, (sCol + eCol) / 2, enemy))) {
+                return MoveStatus.KING_IN_CHECK;
+            }
+            return position.leavesKingInCheck(sRow, sCol, eRow, eCol) ? MoveStatus.KING_IN_CHECK
+                    : MoveStatus.LEGAL;
         }
 
-        // If in check, see if move would stop check
-        int kingRow = (currTurnColor == ChessPiece.Color.WHITE) ? ChessGame.whiteKingRow : ChessGame.blackKingRow;
-        int kingCol = (currTurnColor == ChessPiece.Color.WHITE) ? ChessGame.whiteKingCol : ChessGame.blackKingCol;
+        if (isKing) {
+            // Castling is not allowed out of check or through an attacked square
+            if (Math.abs(eCol - sCol) == 2 && (position.isInCheck()
+                    || position.isSquareAttacked(sRow, (sCol + eCol) / 2, enemy))) {
+                return MoveStatus.KING_IN_CHECK;
+            }
+
+            // The King cannot move to an attacked square (the enemy map already looks through the King)
+            return ((position.getAttacks(enemy) & endBit) != 0) ? MoveStatus.KING_IN_CHECK : MoveStatus.LEGAL;
+        }
 
-        if (ChessGame.isCheck(board, currTurnColor, kingRow, kingCol)) {
-            // Make a copy of the board
-            ChessPiece[][] tempBoard = ChessGame.getCopyBoard(board, sRow, sCol, eRow, eCol);
+        // En passant removes two pieces from a row, so make the move and see if the King is in check
+        if (position.isEnPassant(sRow, sCol, eRow, eCol)) {
+            return position.leavesKingInCheck(sRow, sCol, eRow, eCol) ? MoveStatus.KING_IN_CHECK
+                    : MoveStatus.LEGAL;
+        }
 
-            // Check if King moved
-            if (sRow == ChessGame.whiteKingRow && sCol == ChessGame.whiteKingCol) {
-                kingRow = eRow;
-                kingCol = eCol;
-            } else if (sRow == ChessGame.blackKingRow && sCol == ChessGame.blackKingCol) {
-                kingRow = eRow;
-                kingCol = eCol;
+        int kingSq = Bitboards.square(position.getKingRow(color), position.getKingCol(color));
+        long checkers = position.getCheckers();
+        if (checkers != 0) {
+            // Against a double check only the King can move
+            if (Long.bitCount(checkers) > 1) {
+                return MoveStatus.KING_IN_CHECK;
             }
 
-            // Check if the tempBoard is in check
-            if (ChessGame.isCheck(tempBoard, currTurnColor, kingRow, kingCol)) {
-                throw new ChessException("Invalid Move: King is in check");
+            // Otherwise the checker has to be captured or blocked
+            int checker = Long.numberOfTrailingZeros(checkers);
+            if (((checkers | Bitboards.BETWEEN[kingSq][checker]) & endBit) == 0) {
+                return MoveStatus.KING_IN_CHECK;
             }
+        }
 
+        // A pinned piece can only move along the line of the pin
+        int sSq = Bitboards.square(sRow, sCol);
+        if ((position.getPinned() & (1L << sSq)) != 0 && (Bitboards.LINE[kingSq][sSq] & endBit) == 0) {
+            return MoveStatus.KING_IN_CHECK;
         }
 
-        // Check if move is legal
-        return board[sRow][sCol].isLegal(board, sRow, sCol, eRow, eCol);
+        return MoveStatus.LEGAL;
     }
 
-    // Returns true if a move is valid. Returns false otherwise
-    // Does not check if it is check
-    static boolean pseudoValidate(ChessPiece[][] board, ChessPiece.Color color, int sRow, int sCol, int eRow, int eCol)
-            throws ChessException {
+    // Same as getMoveStatus, but does not check if it is check
+    static MoveStatus getPseudoMoveStatus(Position position, ChessPiece.Color color, int sRow, int sCol, int eRow,
+            int eCol) {
+        ChessBoard board = position.getBoard();
+        MoveStatus status = getSquareStatus(board, color, sRow, sCol, eRow, eCol);
+        if (status != MoveStatus.LEGAL) {
+            return status;
+        }
+
+        // Check if the piece can reach the end square
+        if ((board.getPiece(sRow, sCol).getTargets(position, sRow, sCol) & Bitboards.bit(eRow, eCol)) == 0) {
+            return MoveStatus.UNREACHABLE;
+        }
+
+        return MoveStatus.LEGAL;
+    }
+
+    // Checks the start and end squares of a move made by the given color
+    static MoveStatus getSquareStatus(ChessBoard board, ChessPiece.Color color, int sRow, int sCol, int eRow,
+            int eCol) {
         // Check if move (end square) is out of bounds
-        if (eRow < 0 || eRow >= board.length || eCol < 0 || eCol >= board.length) {
-            throw new ChessException("Invalid Move: Out of bounds");
+        if (eRow < 0 || eRow >= 8 || eCol < 0 || eCol >= 8) {
+            return MoveStatus.OUT_OF_BOUNDS;
         }
 
         // Check if start square is equal to end square
         if (sRow == eRow && sCol == eCol) {
-            throw new ChessException("Invalid Move: Same square");
+            return MoveStatus.SAME_SQUARE;
         }
 
         // Check if there is a piece on starting square
-        ChessPiece piece = board[sRow][sCol];
+        ChessPiece piece = board.getPiece(sRow, sCol);
         if (piece == null) {
-            throw new ChessException("Invalid Move: No piece");
+            return MoveStatus.NO_PIECE;
         }
 
         // Check if starting piece is of the right color
         if (piece.getColor() != color) {
-            throw new ChessException("Invalid Move: Wrong Piece Color");
+            return MoveStatus.WRONG_COLOR;
         }
 
         // Check if there is a piece of the same color on the end square
-        if (board[eRow][eCol] != null && board[eRow][eCol].getColor() == color) {
-            throw new ChessException("Invalid Move: Captured piece is same color");
+        if ((board.getOccupancy(color) & Bitboards.bit(eRow, eCol)) != 0) {
+            return MoveStatus.SAME_COLOR_CAPTURE;
         }
 
-        // Check if move is legal
-        return board[sRow][sCol].isLegal(board, sRow, sCol, eRow, eCol);
+        return MoveStatus.LEGAL;
+    }
+
+    // Converts a status to the boolean/exception results of isValidMove and pseudoValidate
+    private static boolean toResult(MoveStatus status) throws ChessException {
+        if (status == MoveStatus.LEGAL) {
+            return true;
+        } else if (status == MoveStatus.UNREACHABLE) {
+            return false;
+        }
+        throw status.toException();
     }
 }
@@ -0,0 +1,173 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An opening book file built by BookBuilder. The file is memory-mapped and
+ * probed with a binary search, so opening it reads nothing and a lookup
+ * touches only a few pages.
+ *
+ * File layout (big-endian): a 16-byte header (magic "CBOK", version, number
+ * of entries, maximum ply), then the entries sorted by position key and move.
+ * An entry is 28 bytes: position key (8), packed move (2), unused (2), count,
+ * wins, draws and losses (4 each).
+ *
+ * Usage: java chess.OpeningBook book.bin [--moves "e4 e5 ..."]
+ */
+public class OpeningBook implements Closeable {
+    static final int MAGIC = 0x43424F4B; // "CBOK"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 28;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int entryCount;
+    private final int maxPly;
+
+    /**
+     * Opens a book file
+     *
+     * @param path the book file
+     * @throws IOException if the file cannot be read or is not a book
+     */
+    public OpeningBook(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Book file is larger than 2 GB: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a book file: " + path);
+            }
+            entryCount = buffer.getInt(8);
+            maxPly = buffer.getInt(12);
+            if ((long) HEADER_BYTES + (long) entryCount * ENTRY_BYTES > buffer.capacity()) {
+                throw new IOException("Truncated book file: " + path);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the book moves of the current position of a game, most played
+     * first
+     *
+     * @param game the game
+     * @return the book moves (empty if the position is not in the book)
+     */
+    public List<BookMove> getMoves(ChessGame game) {
+        return getMoves(game.getPositionKey());
+    }
+
+    /**
+     * Picks a book move at random, each move weighted by the number of games
+     * it was played in
+     *
+     * @param game   the game
+     * @param random the source of randomness
+     * @return a book move, or null if the position is not in the book
+     */
+    public BookMove pickMove(ChessGame game, Random random) {
+        List<BookMove> moves = getMoves(game);
+        long total = 0;
+        for (BookMove move : moves) {
+            total += move.getCount();
+        }
+        if (total == 0) {
+            return null;
+        }
+
+        long pick = (long) (random.nextDouble() * total);
+        for (BookMove move : moves) {
+            pick -= move.getCount();
+            if (pick < 0) {
+                return move;
+            }
+        }
+        return moves.get(moves.size() - 1);
+    }
+
+    // Returns the book moves of the position with the given key, most played first
+    List<BookMove> getMoves(long key) {
+        // First entry with a key at least as large
+        int low = 0, high = entryCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getKey(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        List<BookMove> moves = new ArrayList<>();
+        for (int i = low; i < entryCount && getKey(i) == key; i++) {
+            int offset = HEADER_BYTES + i * ENTRY_BYTES;
+            moves.add(new BookMove(buffer.getShort(offset + 8) & 0xFFFF, buffer.getInt(offset + 12),
+                    buffer.getInt(offset + 16), buffer.getInt(offset + 20), buffer.getInt(offset + 24)));
+        }
+
+        moves.sort((a, b) -> Integer.compare(b.getCount(), a.getCount()));
+        return Collections.unmodifiableList(moves);
+    }
+
+    // Returns the number of (position, move) entries in the book
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    // Returns the number of plies of each game the book was built from
+    public int getMaxPly() {
+        return maxPly;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long getKey(int index) {
+        return buffer.getLong(HEADER_BYTES + index * ENTRY_BYTES);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java chess.OpeningBook book.bin [--moves \"e4 e5 ...\"]");
+            return;
+        }
+
+        ChessGame game = new ChessGame();
+        if (args.length == 3 && args[1].equals("--moves")) {
+            for (String move : args[2].trim().split("\\s+")) {
+                game.makeMove(move);
+            }
+        }
+
+        try (OpeningBook book = new OpeningBook(Paths.get(args[0]))) {
+            long start = System.nanoTime();
+            List<BookMove> moves = book.getMoves(game);
+            long nanos = System.nanoTime() - start;
+
+            for (BookMove move : moves) {
+                System.out.println(move);
+            }
+            System.out.printf("%d moves found in %.1f us (%d entries in the book)%n", moves.size(), nanos / 1e3,
+                    book.getEntryCount());
+        }
+    }
+}
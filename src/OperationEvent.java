@@ -0,0 +1,29 @@
+package chess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// A Flight Recorder event for an instrumented operation (see Metrics), committed only while a recording enables it
+// Off by default as there can be millions per second: enable chess.Operation in the recording settings (a .jfc
+// file passed to -XX:StartFlightRecording:settings=..., JDK Mission Control or Recording.enable)
+// NOTE: The event is created when the operation ends, so its own duration is 0 and the operation time is in nanos
+@Name("chess.Operation")
+@Label("Chess Operation")
+@Category("Chess")
+@Description("Duration of an instrumented chess operation")
+@Enabled(false)
+@StackTrace(false)
+final class OperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+}
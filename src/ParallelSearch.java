@@ -0,0 +1,157 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Searches with every core (Lazy SMP). The main thread and N-1 helper threads
+ * search the same root position independently, each on its own copy, and
+ * share only the transposition table. Helpers skip some depths so that the
+ * threads spread over different depths; what one thread learns is found in
+ * the table by the others, which makes the main thread reach each depth
+ * sooner.
+ *
+ * The main thread applies the limits. When it stops, the helpers are stopped,
+ * and the result of the deepest iteration completed by any thread is
+ * returned, with the nodes of every thread.
+ *
+ * A ParallelSearch runs one search at a time. Its threads are kept between
+ * searches and released by close().
+ */
+public class ParallelSearch implements AutoCloseable {
+    private final TranspositionTable table;
+    private final Search[] searches; // searches[0] runs on the calling thread
+    private final ExecutorService helpers;
+
+    /**
+     * Creates a parallel search with one thread per core
+     */
+    public ParallelSearch() {
+        this(Runtime.getRuntime().availableProcessors(), Search.DEFAULT_HASH_MB);
+    }
+
+    /**
+     * Creates a parallel search
+     *
+     * @param threads the number of threads searching (1 searches on the
+     *                calling thread only)
+     * @param hashMb  the size of the shared transposition table in megabytes
+     *                (allocated outside the heap, see -XX:MaxDirectMemorySize)
+     */
+    public ParallelSearch(int threads, int hashMb) {
+        if (threads < 1 || hashMb < 1) {
+            throw new ChessException("Invalid search threads or hash size");
+        }
+
+        table = new TranspositionTable(hashMb);
+        searches = new Search[threads];
+        for (int i = 0; i < threads; i++) {
+            searches[i] = new Search(table, i);
+        }
+
+        helpers = (threads == 1) ? null : Executors.newFixedThreadPool(threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets a listener called with every iteration completed by the main thread
+     * (the node counts include the helpers)
+     *
+     * @param listener the listener (null for none)
+     */
+    public void setListener(Consumer<SearchResult> listener) {
+        searches[0].setListener(listener);
+    }
+
+    /**
+     * Stops the running search as soon as possible (can be called from another
+     * thread)
+     */
+    public void stop() {
+        for (Search search : searches) {
+            search.stop();
+        }
+    }
+
+    /**
+     * Searches the current position of a game. The game is not changed
+     *
+     * @param game   the game to find a move for
+     * @param limits the depth, node and time budget (nodes count every thread)
+     * @return the result of the deepest iteration completed by any thread (null
+     *         if the search was stopped during the first one)
+     */
+    public SearchResult bestMove(ChessGame game, SearchLimits limits) {
+        return bestMove(game.getPosition(), limits);
+    }
+
+    // Searches a position with every thread. The position is not changed
+    SearchResult bestMove(Position position, SearchLimits limits) {
+        long start = System.nanoTime();
+        AtomicLong sharedNodes = new AtomicLong();
+        SearchLimits helperLimits = SearchLimits.depth(limits.getDepth());
+
+        table.newSearch();
+        List<Future<SearchResult>> results = new ArrayList<>();
+        for (Search search : searches) {
+            search.prepare(sharedNodes);
+        }
+        for (int i = 1; i < searches.length; i++) {
+            Search helper = searches[i];
+            Position copy = new Position(position);
+            results.add(helpers.submit(() -> helper.iterate(copy, helperLimits)));
+        }
+
+        SearchResult best = searches[0].iterate(new Position(position), limits);
+
+        // The helpers only stop when the main thread is done
+        for (int i = 1; i < searches.length; i++) {
+            searches[i].stop();
+        }
+        for (Future<SearchResult> future : results) {
+            SearchResult result = getResult(future);
+            if (result != null && (best == null || result.getDepth() > best.getDepth())) {
+                best = result;
+            }
+        }
+
+        if (best == null) {
+            return null;
+        }
+        return new SearchResult(best.getPackedPrincipalVariation(), best.getScore(), best.getDepth(),
+                sharedNodes.get(), System.nanoTime() - start);
+    }
+
+    // Clears the transposition table (e.g. before a new game)
+    public void clear() {
+        table.clear();
+    }
+
+    @Override
+    public void close() {
+        if (helpers != null) {
+            stop();
+            helpers.shutdownNow();
+        }
+    }
+
+    private static SearchResult getResult(Future<SearchResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search thread failed", e.getCause());
+        }
+    }
+}
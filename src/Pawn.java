@@ -16,59 +16,58 @@ class Pawn extends ChessPiece {
     }
 
     @Override
-    boolean isLegal(ChessPiece[][] board, int sRow, int sCol, int eRow, int eCol) throws ChessException {
-        checkStartAndEnd(board, sRow, sCol, eRow, eCol);
-        
-        if(PIECE_COLOR == ChessPiece.Color.WHITE) {
-            // White
-        
-            if(sRow - eRow == 1 && sCol == eCol && board[eRow][eCol] == null) {
-                // Move one square in front (if empty)
-                return true;
-            } else if(sRow == 6 && sRow - eRow == 2 && sCol == eCol && board[eRow][eCol] == null) {
-                // Move 2 squares in front
-                return true;
-            } else if(Math.abs(eCol - sCol) == 1 && sRow - 1 == eRow && board[eRow][eCol] != null) {
-                //Capture piece 
-                return true;
-            } else {
-                // En passant
-                return enPassant(board, ChessGame.lastSRow, ChessGame.lastERow, ChessGame.lastECol, sRow, sCol, eRow, eCol);
-            }
-        } else {
-            // Black
-            if(eRow - sRow == 1 && sCol == eCol && board[eRow][eCol] == null) {
-                // Move one square in front (if empty)
-                return true;
-            } else if(sRow == 1 && eRow - sRow == 2 && sCol == eCol && board[eRow][eCol] == null) {
-                // Move 2 squares in front
-                return true;
-            } else if(Math.abs(eCol - sCol) == 1 && eRow - 1 == sRow && board[eRow][eCol] != null) {
-                //Capture piece
-                return true;
-            } else {
-                // En passant
-                return enPassant(board, ChessGame.lastSRow, ChessGame.lastERow, ChessGame.lastECol, sRow, sCol, eRow, eCol);
-            }
+    long getTargets(Position position, int sRow, int sCol) {
+        ChessBoard board = position.getBoard();
+        long empty = ~board.getOccupancy();
+        long enemies = board.getOccupancy(PIECE_COLOR.next());
+
+        // White pawns move up the board (towards row 0), black pawns move down
+        int dir = (PIECE_COLOR == ChessPiece.Color.WHITE) ? -1 : 1;
+        int startRow = (PIECE_COLOR == ChessPiece.Color.WHITE) ? 6 : 1;
+
+        // Move one square in front (if empty)
+        long targets = Bitboards.bit(sRow + dir, sCol) & empty;
+
+        // Move 2 squares in front (both squares have to be empty)
+        if (sRow == startRow && targets != 0) {
+            targets |= Bitboards.bit(sRow + 2 * dir, sCol) & empty;
         }
+
+        //Capture piece
+        int colorIndex = (PIECE_COLOR == ChessPiece.Color.WHITE) ? 0 : 1;
+        targets |= Bitboards.PAWN_ATTACKS[colorIndex][Bitboards.square(sRow, sCol)] & enemies;
+
+        // En passant
+        int lastECol = position.getLastECol();
+        if (lastECol != -1 && position.isEnPassant(sRow, sCol, sRow + dir, lastECol)) {
+            targets |= Bitboards.bit(sRow + dir, lastECol);
+        }
+        return targets;
     }
 
     // Returns true if move is enPassant, false otherwise
-    static boolean enPassant(ChessPiece[][] board, int lastSRow, int lastERow, int lastECol, int sRow, int sCol, int eRow, int eCol) {
+    static boolean enPassant(ChessBoard board, int lastSRow, int lastERow, int lastECol, int sRow, int sCol, int eRow, int eCol) {
+        // Only a pawn can capture en passant
+        ChessPiece piece = board.getPiece(sRow, sCol);
+        if(piece == null || piece.getSymbol() != 'p') {
+            return false;
+        }
+
         // Record differences depending on color
         int diff = 0;
-        if(sRow == 3 && Math.abs(eCol - sCol) == 1 && lastSRow != -1) {
+        if(sRow == 3 && piece.getColor() == Color.WHITE && Math.abs(eCol - sCol) == 1 && lastSRow != -1) {
             // Record for White
             diff = lastERow - lastSRow;
-        } else if(sRow == 4 && Math.abs(eCol - sCol) == 1 && lastSRow != -1) {
+        } else if(sRow == 4 && piece.getColor() == Color.BLACK && Math.abs(eCol - sCol) == 1 && lastSRow != -1) {
             // Record for Black
             diff = lastSRow - lastERow;
         } else {
             return false;
         }
         
-        // Checks if (1) there is a pawn next to it, (2) the pawn moved 2 squares
-        if(board[lastERow][lastECol] != null && board[lastERow][lastECol].getSymbol() == 'p' && lastECol == eCol && diff == 2) {
+        // Checks if (1) there is a pawn next to it, (2) the pawn moved 2 squares, (3) the move lands on the skipped square
+        if(board.getPiece(lastERow, lastECol) != null && board.getPiece(lastERow, lastECol).getSymbol() == 'p' && lastECol == eCol && diff == 2
+                && eRow == (lastSRow + lastERow) / 2) {
             return true;
         } else {
             return false;
@@ -0,0 +1,158 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Perft counts the leaf nodes of the legal move tree to a given depth. The
+ * counts can be compared with published values to find move generation bugs,
+ * and the time it takes is the reference benchmark for move generation.
+ *
+ * Usage: java chess.Perft depth [--divide] [--threads N] [--fen FEN] [--moves "e4 e5 ..."]
+ */
+public class Perft {
+    /**
+     * Counts the leaf nodes from a position to the given depth (single thread)
+     *
+     * @param position the position to start from (unchanged afterwards)
+     * @param depth    the number of plies to search
+     * @return the number of leaf nodes
+     */
+    static long perft(Position position, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+
+        List<int[]> moves = MoveValidator.getLegalMoves(position, position.getTurnColor());
+        if (depth == 1) {
+            return moves.size();
+        }
+
+        long nodes = 0;
+        for (int[] move : moves) {
+            position.makeMove(move[0], move[1], move[2], move[3], (char) move[4]);
+            nodes += perft(position, depth - 1);
+            position.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts the leaf nodes below every root move. The root moves are split
+     * across the threads of the pool, each working on its own copy of the
+     * position
+     *
+     * @param position the position to start from (unchanged afterwards)
+     * @param depth    the number of plies to search (at least 1)
+     * @param pool     the pool that counts the subtrees
+     * @return the number of leaf nodes per root move, in generation order
+     */
+    static Map<String, Long> divide(Position position, int depth, ForkJoinPool pool) {
+        List<int[]> moves = MoveValidator.getLegalMoves(position, position.getTurnColor());
+        List<SubtreeTask> tasks = new ArrayList<>();
+
+        for (int[] move : moves) {
+            tasks.add(new SubtreeTask(new Position(position), move, depth - 1));
+        }
+
+        // Forks every subtree, then waits for them in order
+        pool.invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                invokeAll(tasks);
+                return null;
+            }
+        });
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (SubtreeTask task : tasks) {
+            counts.put(task.getMoveName(), task.join());
+        }
+        return counts;
+    }
+
+    // Counts the subtree below one root move
+    private static class SubtreeTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private final Position position;
+        private final int[] move;
+        private final int depth;
+
+        SubtreeTask(Position position, int[] move, int depth) {
+            this.position = position;
+            this.move = move;
+            this.depth = depth;
+        }
+
+        String getMoveName() {
+            return Move.toString(Move.encode(move[0], move[1], move[2], move[3], (char) move[4]));
+        }
+
+        @Override
+        protected Long compute() {
+            position.makeMove(move[0], move[1], move[2], move[3], (char) move[4]);
+            return perft(position, depth);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println(
+                    "Usage: java chess.Perft depth [--divide] [--threads N] [--fen FEN] [--moves \"e4 e5 ...\"]");
+            return;
+        }
+
+        int depth = Integer.parseInt(args[0]);
+        boolean showDivide = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        ChessGame game = new ChessGame();
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--divide":
+                    showDivide = true;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--fen":
+                    game = ChessGame.fromFen(args[++i]);
+                    break;
+                case "--moves":
+                    for (String move : args[++i].trim().split("\\s+")) {
+                        game.makeMove(move);
+                    }
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        long nodes = 0;
+
+        if (depth == 0) {
+            nodes = 1;
+        } else {
+            Map<String, Long> counts = divide(game.getPosition(), depth, pool);
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                if (showDivide) {
+                    System.out.printf("%s: %d%n", entry.getKey(), entry.getValue());
+                }
+                nodes += entry.getValue();
+            }
+        }
+
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("%nDepth: %d%nNodes: %d%nTime: %.3f s%nNodes/second: %.0f%n", depth, nodes, seconds,
+                nodes / seconds);
+    }
+}
@@ -0,0 +1,132 @@
+package chess;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A game read from a PGN file: its tag pairs and the moves of its main line.
+ * Moves are in SAN without move numbers, check marks or annotation glyphs
+ * (e.g. "e4", "Nbd7", "O-O"), so they can be passed to ChessGame.makeMove.
+ */
+public class PgnGame {
+    private final int index;
+    private final Map<String, String> tags;
+    private final List<String> moves;
+    private final String result;
+
+    PgnGame(int index, Map<String, String> tags, List<String> moves, String result) {
+        this.index = index;
+        this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+        this.moves = Collections.unmodifiableList(moves);
+        this.result = result;
+    }
+
+    /**
+     * Returns the position of the game in its file (the first game is 1)
+     *
+     * @return the index of the game
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns every tag pair of the game, in file order
+     *
+     * @return the tags of the game
+     */
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * Returns the value of a tag
+     *
+     * @param name the name of the tag (e.g. Event, White)
+     * @return the value of the tag, or null if the game does not have it
+     */
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    public String getEvent() {
+        return tags.get("Event");
+    }
+
+    public String getWhite() {
+        return tags.get("White");
+    }
+
+    public String getBlack() {
+        return tags.get("Black");
+    }
+
+    public String getEco() {
+        return tags.get("ECO");
+    }
+
+    /**
+     * Returns the result at the end of the movetext, or the Result tag if the
+     * movetext has none
+     *
+     * @return the result of the game ("1-0", "0-1", "1/2-1/2" or "*")
+     */
+    public String getResult() {
+        if (result != null) {
+            return result;
+        }
+        return tags.getOrDefault("Result", "*");
+    }
+
+    /**
+     * Returns the moves of the main line (comments, NAGs and variations are left
+     * out)
+     *
+     * @return the moves of the game in SAN
+     */
+    public List<String> getMoves() {
+        return moves;
+    }
+
+    /**
+     * Returns the game in PGN: its tag pairs, then its moves with move numbers
+     * and its result, wrapped at 80 columns
+     *
+     * @return the game in PGN, ending with an empty line
+     */
+    public String toPgn() {
+        return format(tags, moves, getResult());
+    }
+
+    // Formats a game in PGN, with the moves written as given
+    static String format(Map<String, String> tags, List<String> moves, String result) {
+        StringBuilder pgn = new StringBuilder(256 + moves.size() * 8);
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            String value = tag.getValue().replace("\\", "\\\\").replace("\"", "\\\"");
+            pgn.append('[').append(tag.getKey()).append(" \"").append(value).append("\"]\n");
+        }
+        pgn.append('\n');
+
+        int lineStart = pgn.length();
+        for (int i = 0; i <= moves.size(); i++) {
+            String token = (i == moves.size()) ? result
+                    : (i % 2 == 0) ? (i / 2 + 1) + ". " + moves.get(i) : moves.get(i);
+            if (pgn.length() > lineStart && pgn.length() - lineStart + 1 + token.length() > 80) {
+                pgn.append('\n');
+                lineStart = pgn.length();
+            } else if (pgn.length() > lineStart) {
+                pgn.append(' ');
+            }
+            pgn.append(token);
+        }
+        return pgn.append("\n\n").toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Game %d: %s - %s %s (%d plies)", index, getWhite(), getBlack(), getResult(),
+                moves.size());
+    }
+}
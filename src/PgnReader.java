@@ -0,0 +1,322 @@
+package chess;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the games of a PGN file one at a time. Files are memory-mapped in
+ * fixed-size windows, so only the current game is held in memory no matter how
+ * large the file is.
+ *
+ * Tag pairs are kept, comments ({...} and ;...), NAGs ($n), escape lines (%...)
+ * and variations ((...)) are skipped, and the main line is returned as a list
+ * of SAN moves.
+ */
+public class PgnReader implements Iterator<PgnGame>, Closeable {
+    private static final long WINDOW_SIZE = 64L << 20; // Bytes mapped at once
+    private static final int NONE = -2; // No byte was pushed back
+
+    // Source of the bytes: a mapped file or a stream
+    private final FileChannel channel;
+    private final InputStream input;
+    private MappedByteBuffer window;
+    private long mappedEnd;
+    private int pushedBack = NONE;
+
+    private byte[] buffer = new byte[64]; // Bytes of the current token or tag
+    private int length;
+
+    private PgnGame next;
+    private int gameCount;
+
+    /**
+     * Opens a PGN file
+     *
+     * @param path the PGN file
+     * @throws IOException if the file cannot be opened
+     */
+    public PgnReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        input = null;
+    }
+
+    /**
+     * Reads PGN from a stream (e.g. a network connection or a compressed file)
+     *
+     * @param input the PGN text
+     */
+    public PgnReader(InputStream input) {
+        channel = null;
+        this.input = new BufferedInputStream(input, 1 << 16);
+    }
+
+    /**
+     * Returns the games of a PGN file as a stream. The file is closed when the
+     * stream is closed
+     *
+     * @param path the PGN file
+     * @return the games of the file, in order
+     * @throws IOException if the file cannot be opened
+     */
+    public static Stream<PgnGame> stream(Path path) throws IOException {
+        PgnReader reader = new PgnReader(path);
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(reader::closeQuietly);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = readGame();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public PgnGame next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        PgnGame game = next;
+        next = null;
+        return game;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        } else {
+            input.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads the next game, or returns null at the end of the file
+    private PgnGame readGame() throws IOException {
+        Map<String, String> tags = new LinkedHashMap<>();
+        List<String> moves = new ArrayList<>();
+        String result = null;
+        boolean inMovetext = false;
+        boolean found = false;
+
+        int c;
+        while ((c = read()) != -1) {
+            if (isWhitespace(c) || c == ')') {
+                continue;
+            }
+
+            if (c == '[') {
+                if (inMovetext) {
+                    // The game ended without a result, this tag belongs to the next one
+                    pushedBack = c;
+                    break;
+                }
+                readTag(tags);
+                found = true;
+            } else if (c == '{') {
+                skipComment();
+            } else if (c == ';' || c == '%') {
+                skipLine();
+            } else if (c == '(') {
+                skipVariation();
+            } else if (c == '$') {
+                readToken(c);
+            } else {
+                inMovetext = true;
+                found = true;
+
+                String token = readToken(c);
+                if (token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*")) {
+                    result = token;
+                    break;
+                }
+
+                String move = toMove(token);
+                if (!move.isEmpty()) {
+                    moves.add(move);
+                }
+            }
+        }
+
+        return found ? new PgnGame(++gameCount, tags, moves, result) : null;
+    }
+
+    // Reads a tag pair after its '[' (e.g. [White "Kortschnoj, Viktor"])
+    private void readTag(Map<String, String> tags) throws IOException {
+        int c = read();
+        while (c != -1 && isWhitespace(c)) {
+            c = read();
+        }
+
+        length = 0;
+        while (c != -1 && !isWhitespace(c) && c != '"' && c != ']') {
+            append(c);
+            c = read();
+        }
+        String name = new String(buffer, 0, length, StandardCharsets.UTF_8);
+
+        while (c != -1 && c != '"' && c != ']') {
+            c = read();
+        }
+
+        length = 0;
+        if (c == '"') {
+            // Quoted value, \" and \\ are escapes
+            while ((c = read()) != -1 && c != '"') {
+                if (c == '\\') {
+                    c = read();
+                }
+                append(c);
+            }
+            while (c != -1 && c != ']') {
+                c = read();
+            }
+        }
+
+        tags.put(name, new String(buffer, 0, length, StandardCharsets.UTF_8));
+    }
+
+    // Reads a movetext token starting with the given byte
+    private String readToken(int first) throws IOException {
+        length = 0;
+        append(first);
+
+        int c;
+        while ((c = read()) != -1) {
+            if (isWhitespace(c) || c == '{' || c == '}' || c == '(' || c == ')' || c == '[' || c == ';'
+                    || c == '$') {
+                pushedBack = c;
+                break;
+            }
+            append(c);
+        }
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    // Removes the move number (e.g. 12. or 12...), check marks and annotation glyphs from a token
+    private static String toMove(String token) {
+        int start = 0;
+        if (Character.isDigit(token.charAt(0))) {
+            int dot = token.lastIndexOf('.');
+            if (dot != -1) {
+                start = dot + 1;
+            }
+        }
+
+        int end = token.length();
+        while (end > start && "+#!?".indexOf(token.charAt(end - 1)) != -1) {
+            end--;
+        }
+
+        String move = token.substring(start, end);
+
+        // Some files write castling with zeros
+        if (move.equals("0-0")) {
+            return "O-O";
+        } else if (move.equals("0-0-0")) {
+            return "O-O-O";
+        }
+        return move;
+    }
+
+    private void skipComment() throws IOException {
+        int c = read();
+        while (c != -1 && c != '}') {
+            c = read();
+        }
+    }
+
+    private void skipLine() throws IOException {
+        int c = read();
+        while (c != -1 && c != '\n') {
+            c = read();
+        }
+    }
+
+    // Skips a variation after its '(' (variations can be nested and hold comments)
+    private void skipVariation() throws IOException {
+        int depth = 1;
+        int c;
+        while (depth > 0 && (c = read()) != -1) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '{') {
+                skipComment();
+            } else if (c == ';') {
+                skipLine();
+            }
+        }
+    }
+
+    private void append(int c) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, length * 2);
+        }
+        buffer[length++] = (byte) c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+
+    // Returns the next byte of the source, or -1 at the end
+    private int read() throws IOException {
+        if (pushedBack != NONE) {
+            int c = pushedBack;
+            pushedBack = NONE;
+            return c;
+        }
+
+        if (channel == null) {
+            return input.read();
+        }
+
+        if (window == null || !window.hasRemaining()) {
+            long size = channel.size();
+            if (mappedEnd >= size) {
+                return -1;
+            }
+
+            // Map the next part of the file
+            long windowSize = Math.min(WINDOW_SIZE, size - mappedEnd);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, mappedEnd, windowSize);
+            mappedEnd += windowSize;
+        }
+        return window.get() & 0xFF;
+    }
+}
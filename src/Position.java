@@ -0,0 +1,457 @@
+package chess;
+
+import java.util.Arrays;
+
+// The Position class holds the board together with the state a single game needs to validate moves
+// NOTE: Every ChessGame owns its own Position, so any number of games can live in the same JVM
+// A Position is not synchronized. It must only be used by one thread at a time (e.g. one thread per game)
+class Position {
+    private final ChessBoard board;
+    private ChessPiece.Color turnColor; // Color for this turn
+
+    // Store position of White King
+    private int whiteKingRow;
+    private int whiteKingCol;
+
+    // Store position of Black King
+    private int blackKingRow;
+    private int blackKingCol;
+
+    // Needed to detect en passant
+    private int lastSRow;
+    private int lastERow;
+    private int lastECol;
+
+    // Undo records of the moves made so far (reused, grows only when a game gets very long)
+    private Undo[] undoStack;
+    private int ply;
+    private final int firstPly; // Plies played before the position this one was set up from
+
+    // Moves since the last capture or pawn move (fifty-move rule)
+    private int halfmoveClock;
+
+    // Zobrist keys of the positions reached so far (the last one is the current position)
+    // repetitions[i] counts how many times the position keyHistory[i] has occurred up to that point
+    private long[] keyHistory;
+    private int[] repetitions;
+    private int keyCount;
+
+    // Attack maps of the current position, computed on the first query after a move and restored by unmakeMove
+    // The map of the side not to move is computed without the King of the side to move, so sliders see
+    // through it (the squares behind the King along a check are attacked too, the King cannot step there)
+    private boolean attacksValid;
+    private long whiteAttacks;
+    private long blackAttacks;
+    private long checkers; // Enemy pieces giving check to the side to move
+    private long pinned; // Pieces of the side to move pinned to their King
+
+    // Creates the starting position of a new game
+    Position() {
+        this(new ChessBoard(), ChessPiece.Color.WHITE, -1, 0, 1);
+    }
+
+    // Creates a position from its parts (see Fen). The moved flags of the Kings and Rooks on the board give the
+    // castling rights. doublePushCol is the column of a pawn that just moved two squares (-1 if none), and
+    // moveNumber the number of the current full move (1 in the starting position)
+    Position(ChessBoard board, ChessPiece.Color turnColor, int doublePushCol, int halfmoveClock, int moveNumber) {
+        this.board = board;
+        this.turnColor = turnColor;
+
+        // Initiates the king positions
+        int whiteKing = Long.numberOfTrailingZeros(board.getPieceSet(ChessPiece.Color.WHITE, 'K'));
+        int blackKing = Long.numberOfTrailingZeros(board.getPieceSet(ChessPiece.Color.BLACK, 'K'));
+        whiteKingRow = whiteKing >> 3;
+        whiteKingCol = whiteKing & 7;
+        blackKingRow = blackKing >> 3;
+        blackKingCol = blackKing & 7;
+
+        if (doublePushCol == -1) {
+            // Sets last coordinates to invalid number
+            lastSRow = -1;
+            lastERow = -1;
+            lastECol = -1;
+        } else {
+            // The pawn of the side not to move came from its starting row
+            boolean whiteMoved = turnColor == ChessPiece.Color.BLACK;
+            lastSRow = whiteMoved ? 6 : 1;
+            lastERow = whiteMoved ? 4 : 3;
+            lastECol = doublePushCol;
+        }
+
+        this.halfmoveClock = halfmoveClock;
+        firstPly = 2 * (moveNumber - 1) + ((turnColor == ChessPiece.Color.BLACK) ? 1 : 0);
+        undoStack = newUndoStack(256, 0, null);
+
+        keyHistory = new long[256];
+        repetitions = new int[256];
+        pushKey();
+    }
+
+    // Copy constructor (for deep copies)
+    Position(Position other) {
+        board = new ChessBoard(other.board);
+        turnColor = other.turnColor;
+        whiteKingRow = other.whiteKingRow;
+        whiteKingCol = other.whiteKingCol;
+        blackKingRow = other.blackKingRow;
+        blackKingCol = other.blackKingCol;
+        lastSRow = other.lastSRow;
+        lastERow = other.lastERow;
+        lastECol = other.lastECol;
+        undoStack = newUndoStack(256, 0, null);
+        halfmoveClock = other.halfmoveClock;
+        firstPly = other.firstPly + other.ply;
+
+        // Only the keys since the last capture or pawn move can still repeat
+        keyCount = Math.min(other.keyCount, halfmoveClock + 1);
+        keyHistory = Arrays.copyOfRange(other.keyHistory, other.keyCount - keyCount, other.keyCount + 256);
+        repetitions = Arrays.copyOfRange(other.repetitions, other.keyCount - keyCount, other.keyCount + 256);
+    }
+
+    ChessBoard getBoard() {
+        return board;
+    }
+
+    ChessPiece.Color getTurnColor() {
+        return turnColor;
+    }
+
+    // Returns the number of moves that can currently be taken back
+    int getPly() {
+        return ply;
+    }
+
+    // Returns the number of plies played before the position this one was set up from (1 if Black moved first)
+    int getFirstPly() {
+        return firstPly;
+    }
+
+    // Returns the Zobrist key of the current position
+    long getKey() {
+        return keyHistory[keyCount - 1];
+    }
+
+    // Returns the number of the current full move (1 in the starting position, incremented after Black moves)
+    int getMoveNumber() {
+        return (firstPly + ply) / 2 + 1;
+    }
+
+    int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    // Returns how many times the current position has occurred (1 the first time it is reached)
+    int getRepetitions() {
+        return repetitions[keyCount - 1];
+    }
+
+    // Returns the castling rights as a set of flags
+    // 1: White kingside, 2: White queenside, 4: Black kingside, 8: Black queenside
+    // NOTE: A right is kept as long as the King and that Rook have not moved (the moved flag of the pieces)
+    int getCastlingRights() {
+        return (hasCastlingRight(7, 7) ? 1 : 0) | (hasCastlingRight(7, 0) ? 2 : 0)
+                | (hasCastlingRight(0, 7) ? 4 : 0) | (hasCastlingRight(0, 0) ? 8 : 0);
+    }
+
+    // Returns the column on which the side to move could capture en passant, -1 otherwise
+    int getEnPassantCol() {
+        if (lastSRow == -1 || Math.abs(lastERow - lastSRow) != 2) {
+            return -1;
+        }
+
+        ChessPiece piece = board.getPiece(lastERow, lastECol);
+        if (piece == null || piece.getSymbol() != 'p') {
+            return -1;
+        }
+
+        // There has to be a pawn next to the pawn that just moved
+        long neighbours = Bitboards.bit(lastERow, lastECol - 1) | Bitboards.bit(lastERow, lastECol + 1);
+        return ((board.getPieceSet(turnColor, 'p') & neighbours) != 0) ? lastECol : -1;
+    }
+
+    int getKingRow(ChessPiece.Color color) {
+        return (color == ChessPiece.Color.WHITE) ? whiteKingRow : blackKingRow;
+    }
+
+    int getKingCol(ChessPiece.Color color) {
+        return (color == ChessPiece.Color.WHITE) ? whiteKingCol : blackKingCol;
+    }
+
+    int getLastSRow() {
+        return lastSRow;
+    }
+
+    int getLastERow() {
+        return lastERow;
+    }
+
+    int getLastECol() {
+        return lastECol;
+    }
+
+    // Returns every square attacked by the given color (see attacksValid for the side not to move)
+    long getAttacks(ChessPiece.Color color) {
+        if (!attacksValid) {
+            updateAttacks();
+        }
+        return (color == ChessPiece.Color.WHITE) ? whiteAttacks : blackAttacks;
+    }
+
+    // Returns true if a piece of the given color attacks the square (constant time once the maps are computed)
+    boolean isSquareAttacked(int row, int col, ChessPiece.Color byColor) {
+        return (getAttacks(byColor) & Bitboards.bit(row, col)) != 0;
+    }
+
+    // Returns the enemy pieces giving check to the side to move
+    long getCheckers() {
+        if (!attacksValid) {
+            updateAttacks();
+        }
+        return checkers;
+    }
+
+    // Returns the pieces of the side to move that cannot leave the line between their King and an enemy slider
+    long getPinned() {
+        if (!attacksValid) {
+            updateAttacks();
+        }
+        return pinned;
+    }
+
+    // Returns true if the side to move is in check
+    boolean isInCheck() {
+        return getCheckers() != 0;
+    }
+
+    // Returns true if the move is an en passant capture in this position
+    boolean isEnPassant(int sRow, int sCol, int eRow, int eCol) {
+        return Pawn.enPassant(board, lastSRow, lastERow, lastECol, sRow, sCol, eRow, eCol);
+    }
+
+    // Makes a packed move (see Move)
+    void makeMove(int move) {
+        makeMove(Move.sRow(move), Move.sCol(move), Move.eRow(move), Move.eCol(move), Move.promotion(move));
+    }
+
+    // Makes a move without a promotion piece (a pawn reaching the last row becomes a Queen)
+    void makeMove(int sRow, int sCol, int eRow, int eCol) {
+        makeMove(sRow, sCol, eRow, eCol, (char) 0);
+    }
+
+    // Makes a move on the board and switches the turn. The move is not validated
+    // Special moves (en passant, castling, promotion) are detected from the position
+    // promotion is the symbol of the piece a pawn becomes on the last row (0 for a Queen)
+    void makeMove(int sRow, int sCol, int eRow, int eCol, char promotion) {
+        if (ply == undoStack.length) {
+            undoStack = newUndoStack(undoStack.length * 2, ply, undoStack);
+        }
+        Undo undo = undoStack[ply++];
+
+        ChessPiece piece = board.getPiece(sRow, sCol);
+        undo.sRow = sRow;
+        undo.sCol = sCol;
+        undo.eRow = eRow;
+        undo.eCol = eCol;
+        undo.pieceMoved = piece.moved;
+        undo.rookSCol = -1;
+        undo.rookECol = -1;
+        undo.lastSRow = lastSRow;
+        undo.lastERow = lastERow;
+        undo.lastECol = lastECol;
+        undo.kingRow = getKingRow(turnColor);
+        undo.kingCol = getKingCol(turnColor);
+        undo.halfmoveClock = halfmoveClock;
+        undo.captured = null;
+        undo.promotedPawn = null;
+        undo.attacksValid = attacksValid;
+        undo.whiteAttacks = whiteAttacks;
+        undo.blackAttacks = blackAttacks;
+        undo.checkers = checkers;
+        undo.pinned = pinned;
+        attacksValid = false;
+
+        if (isEnPassant(sRow, sCol, eRow, eCol)) {
+            // Special case for en passant
+            undo.captured = board.removePiece(lastERow, lastECol);
+            undo.capturedRow = lastERow;
+            undo.capturedCol = lastECol;
+        } else if (King.pseudoKingsideCastling(board, sRow, sCol, eRow, eCol)) {
+            // Special case for kingside castling
+            undo.rookSCol = 7;
+            undo.rookECol = 5;
+        } else if (King.pseudoQueensideCastling(board, sRow, sCol, eRow, eCol)) {
+            // Special case for queenside castling
+            undo.rookSCol = 0;
+            undo.rookECol = 3;
+        }
+
+        if (undo.rookSCol != -1) {
+            board.movePiece(sRow, undo.rookSCol, sRow, undo.rookECol);
+        }
+
+        // Move piece to endPos
+        ChessPiece captured = board.movePiece(sRow, sCol, eRow, eCol);
+        if (captured != null) {
+            undo.captured = captured;
+            undo.capturedRow = eRow;
+            undo.capturedCol = eCol;
+        }
+
+        // Update moved feature of piece
+        piece.moved = true;
+
+        // Pawn promotion
+        if (piece.getSymbol() == 'p' && (eRow == 0 || eRow == 7)) {
+            undo.promotedPawn = board.removePiece(eRow, eCol);
+
+            ChessPiece promoted = ChessPiece.create(piece.getColor(), (promotion == 0) ? 'Q' : promotion);
+            promoted.moved = true;
+            board.setPiece(eRow, eCol, promoted);
+        }
+
+        recordMove(sRow, sCol, eRow, eCol);
+
+        // Switches color to the color of the next turn
+        turnColor = turnColor.next();
+
+        halfmoveClock = (piece.getSymbol() == 'p' || undo.captured != null) ? 0 : halfmoveClock + 1;
+        pushKey();
+    }
+
+    // Takes back the last move made with makeMove
+    void unmakeMove() {
+        Undo undo = undoStack[--ply];
+
+        turnColor = turnColor.next();
+        halfmoveClock = undo.halfmoveClock;
+        keyCount--;
+
+        ChessPiece piece = board.removePiece(undo.eRow, undo.eCol);
+        if (undo.promotedPawn != null) {
+            piece = undo.promotedPawn;
+            undo.promotedPawn = null;
+        }
+        board.setPiece(undo.sRow, undo.sCol, piece);
+        piece.moved = undo.pieceMoved;
+
+        if (undo.rookSCol != -1) {
+            board.movePiece(undo.sRow, undo.rookECol, undo.sRow, undo.rookSCol);
+        }
+
+        if (undo.captured != null) {
+            board.setPiece(undo.capturedRow, undo.capturedCol, undo.captured);
+            undo.captured = null;
+        }
+
+        if (turnColor == ChessPiece.Color.WHITE) {
+            whiteKingRow = undo.kingRow;
+            whiteKingCol = undo.kingCol;
+        } else {
+            blackKingRow = undo.kingRow;
+            blackKingCol = undo.kingCol;
+        }
+
+        lastSRow = undo.lastSRow;
+        lastERow = undo.lastERow;
+        lastECol = undo.lastECol;
+
+        attacksValid = undo.attacksValid;
+        whiteAttacks = undo.whiteAttacks;
+        blackAttacks = undo.blackAttacks;
+        checkers = undo.checkers;
+        pinned = undo.pinned;
+    }
+
+    // Returns true if making the move would leave the moving side's King in check
+    // The move is made and taken back, the position is unchanged afterwards
+    boolean leavesKingInCheck(int sRow, int sCol, int eRow, int eCol) {
+        ChessPiece.Color color = board.getPiece(sRow, sCol).getColor();
+
+        makeMove(sRow, sCol, eRow, eCol);
+        boolean check = ChessGame.isCheck(board, color, getKingRow(color), getKingCol(color));
+        unmakeMove();
+
+        return check;
+    }
+
+    // Computes the attack maps, checkers and pinned pieces of the current position
+    private void updateAttacks() {
+        ChessPiece.Color enemy = turnColor.next();
+        int kingSq = Bitboards.square(getKingRow(turnColor), getKingCol(turnColor));
+        long occupancy = board.getOccupancy();
+        long enemyAttacks = board.getAttacks(enemy, occupancy & ~(1L << kingSq));
+        long ownAttacks = board.getAttacks(turnColor, occupancy);
+
+        whiteAttacks = (turnColor == ChessPiece.Color.WHITE) ? ownAttacks : enemyAttacks;
+        blackAttacks = (turnColor == ChessPiece.Color.WHITE) ? enemyAttacks : ownAttacks;
+        checkers = ((enemyAttacks & (1L << kingSq)) != 0) ? board.getAttackers(kingSq, enemy, occupancy) : 0;
+        pinned = board.getPinned(kingSq, turnColor);
+        attacksValid = true;
+    }
+
+    // Adds the key of the current position to the history and counts its repetitions
+    private void pushKey() {
+        if (keyCount == keyHistory.length) {
+            keyHistory = Arrays.copyOf(keyHistory, keyCount * 2);
+            repetitions = Arrays.copyOf(repetitions, keyCount * 2);
+        }
+
+        long key = board.getPieceKey() ^ Zobrist.CASTLING[getCastlingRights()];
+        int epCol = getEnPassantCol();
+        if (epCol != -1) {
+            key ^= Zobrist.EN_PASSANT[epCol];
+        }
+        if (turnColor == ChessPiece.Color.BLACK) {
+            key ^= Zobrist.BLACK_TO_MOVE;
+        }
+
+        // Only positions since the last capture or pawn move, with the same side to move, can be equal
+        // The closest earlier occurrence already holds the count of all the ones before it
+        int count = 1;
+        for (int i = keyCount - 2; i >= 0 && i >= keyCount - halfmoveClock; i -= 2) {
+            if (keyHistory[i] == key) {
+                count = repetitions[i] + 1;
+                break;
+            }
+        }
+
+        keyHistory[keyCount] = key;
+        repetitions[keyCount] = count;
+        keyCount++;
+    }
+
+    // Returns true if the King and Rook on their starting squares have not moved
+    private boolean hasCastlingRight(int row, int rookCol) {
+        ChessPiece.Color color = (row == 7) ? ChessPiece.Color.WHITE : ChessPiece.Color.BLACK;
+        ChessPiece king = board.getPiece(row, 4);
+        ChessPiece rook = board.getPiece(row, rookCol);
+
+        return king != null && king.getSymbol() == 'K' && king.getColor() == color && !king.moved
+                && rook != null && rook.getSymbol() == 'R' && rook.getColor() == color && !rook.moved;
+    }
+
+    // Returns a stack with the first records copied from an old stack and fresh records for the rest
+    private static Undo[] newUndoStack(int size, int keep, Undo[] old) {
+        Undo[] stack = (old == null) ? new Undo[size] : Arrays.copyOf(old, size);
+        for (int i = keep; i < size; i++) {
+            stack[i] = new Undo();
+        }
+        return stack;
+    }
+
+    // Records a move that was just played on the board (king squares and en passant data)
+    private void recordMove(int sRow, int sCol, int eRow, int eCol) {
+        // Check if King moved
+        if (sRow == whiteKingRow && sCol == whiteKingCol) {
+            whiteKingRow = eRow;
+            whiteKingCol = eCol;
+        } else if (sRow == blackKingRow && sCol == blackKingCol) {
+            blackKingRow = eRow;
+            blackKingCol = eCol;
+        }
+
+        lastSRow = sRow;
+        lastERow = eRow;
+        lastECol = eCol;
+    }
+}
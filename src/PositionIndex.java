@@ -0,0 +1,224 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An index of the positions reached by the games of a database, built by
+ * PositionIndexBuilder. For every position it lists the games that reached it
+ * (an inverted index from position key to postings), so finding the games of
+ * a position is a binary search over the keys instead of a replay of every
+ * game. The file is memory-mapped; opening it reads nothing.
+ *
+ * File layout (big-endian):
+ * <ul>
+ * <li>a 24-byte header: magic "CPIX", version, number of games, of keys, of
+ * postings and size of the tag section</li>
+ * <li>the keys, sorted as unsigned numbers: key (8) and index of its first
+ * posting (4). The postings of a key end where those of the next key
+ * begin</li>
+ * <li>the game index of every posting (4 bytes each), then the ply of every
+ * posting (2 bytes each). The postings of a key are in game order</li>
+ * <li>the offset of the tags of every game (4 bytes each), then the tags
+ * (see TAGS), each as a 2-byte length and UTF-8 bytes</li>
+ * </ul>
+ *
+ * Each section is mapped separately and is limited to 2 GB.
+ *
+ * Usage: java chess.PositionIndex index.bin [--moves "e4 e5 ..."] [--limit N]
+ */
+public class PositionIndex implements Closeable {
+    static final int MAGIC = 0x43504958; // "CPIX"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final int KEY_BYTES = 12;
+
+    // Tags stored for every game
+    static final String[] TAGS = { "Event", "Date", "White", "Black", "Result" };
+
+    private final FileChannel channel;
+    private final int gameCount;
+    private final int keyCount;
+    private final int postingCount;
+    private final ByteBuffer keys;
+    private final ByteBuffer postingGames;
+    private final ByteBuffer postingPlies;
+    private final ByteBuffer tagOffsets;
+    private final ByteBuffer tags;
+
+    /**
+     * Opens an index file
+     *
+     * @param path the index file
+     * @throws IOException if the file cannot be read or is not an index
+     */
+    public PositionIndex(Path path) throws IOException {
+        channel = FileChannel.open(path);
+        try {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), HEADER_BYTES));
+            if (header.capacity() < HEADER_BYTES || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a position index: " + path);
+            }
+            gameCount = header.getInt(8);
+            keyCount = header.getInt(12);
+            postingCount = header.getInt(16);
+            int tagBytes = header.getInt(20);
+
+            long offset = HEADER_BYTES;
+            keys = map(offset, (long) keyCount * KEY_BYTES, path);
+            offset += keys.capacity();
+            postingGames = map(offset, (long) postingCount * 4, path);
+            offset += postingGames.capacity();
+            postingPlies = map(offset, (long) postingCount * 2, path);
+            offset += postingPlies.capacity();
+            tagOffsets = map(offset, (long) gameCount * 4, path);
+            offset += tagOffsets.capacity();
+            tags = map(offset, tagBytes, path);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer map(long offset, long length, Path path) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Index section larger than 2 GB: " + path);
+        } else if (offset + length > channel.size()) {
+            throw new IOException("Truncated position index: " + path);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    /**
+     * Returns the games that reached the current position of a game, in game
+     * order
+     *
+     * @param game  the game whose position is searched
+     * @param limit the maximum number of games returned
+     * @return the matching games
+     */
+    public List<PositionMatch> find(ChessGame game, int limit) {
+        return find(game.getPositionKey(), limit);
+    }
+
+    /**
+     * Returns the number of games that reached the current position of a game
+     *
+     * @param game the game whose position is searched
+     * @return the number of matching games
+     */
+    public int count(ChessGame game) {
+        int first = findKey(game.getPositionKey());
+        return (first < 0) ? 0 : getPostingEnd(first) - getFirstPosting(first);
+    }
+
+    // Returns up to limit games that reached the position with the given key
+    List<PositionMatch> find(long key, int limit) {
+        List<PositionMatch> matches = new ArrayList<>();
+        int index = findKey(key);
+        if (index < 0) {
+            return matches;
+        }
+
+        int first = getFirstPosting(index);
+        int end = first + Math.min(getPostingEnd(index) - first, Math.max(0, limit));
+        for (int i = first; i < end; i++) {
+            int gameIndex = postingGames.getInt(i * 4);
+            matches.add(new PositionMatch(gameIndex, postingPlies.getShort(i * 2) & 0xFFFF, getTags(gameIndex)));
+        }
+        return matches;
+    }
+
+    // Returns the index of the key in the key section, or -1 if no game reached the position
+    private int findKey(long key) {
+        int low = 0, high = keyCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = Long.compareUnsigned(keys.getLong(middle * KEY_BYTES), key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int getFirstPosting(int keyIndex) {
+        return keys.getInt(keyIndex * KEY_BYTES + 8);
+    }
+
+    private int getPostingEnd(int keyIndex) {
+        return (keyIndex + 1 < keyCount) ? getFirstPosting(keyIndex + 1) : postingCount;
+    }
+
+    // Reads the tags of a game (numbered from 1)
+    private String[] getTags(int gameIndex) {
+        String[] values = new String[TAGS.length];
+        int offset = tagOffsets.getInt((gameIndex - 1) * 4);
+        for (int i = 0; i < values.length; i++) {
+            int length = tags.getShort(offset) & 0xFFFF;
+            byte[] bytes = new byte[length];
+            tags.get(offset + 2, bytes);
+            values[i] = (length == 0) ? null : new String(bytes, StandardCharsets.UTF_8);
+            offset += 2 + length;
+        }
+        return values;
+    }
+
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    // Returns the number of distinct positions in the index
+    public int getPositionCount() {
+        return keyCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java chess.PositionIndex index.bin [--moves \"e4 e5 ...\"] [--limit N]");
+            return;
+        }
+
+        ChessGame game = new ChessGame();
+        int limit = 20;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--moves")) {
+                for (String move : args[i + 1].trim().split("\\s+")) {
+                    game.makeMove(move);
+                }
+            } else if (args[i].equals("--limit")) {
+                limit = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        try (PositionIndex index = new PositionIndex(Paths.get(args[0]))) {
+            long start = System.nanoTime();
+            int count = index.count(game);
+            List<PositionMatch> matches = index.find(game, limit);
+            long nanos = System.nanoTime() - start;
+
+            for (PositionMatch match : matches) {
+                System.out.println(match);
+            }
+            System.out.printf("%d of %d games reached the position, found in %.1f us (%d positions indexed)%n",
+                    count, index.getGameCount(), nanos / 1e3, index.getPositionCount());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package chess;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Builds a position index (see PositionIndex) from PGN files. Every game is
+ * replayed once, and a posting (game, ply) is recorded for the key of every
+ * position it reaches, including the starting and the final position. A game
+ * is indexed up to its first invalid move. When a game reaches a position
+ * more than once, only the first ply is kept.
+ *
+ * The postings are kept in memory (16 bytes each) until the index is written.
+ *
+ * Usage: java chess.PositionIndexBuilder index.bin games.pgn...
+ */
+public class PositionIndexBuilder {
+    // Postings in game order: position key, and game index << 16 | ply
+    private long[] keys = new long[1 << 16];
+    private long[] values = new long[1 << 16];
+    private int size;
+
+    // Tags of the games (see PositionIndex.TAGS), each as a 2-byte length and UTF-8 bytes
+    private final ByteArrayOutputStream tagBytes = new ByteArrayOutputStream();
+    private final DataOutputStream tagOutput = new DataOutputStream(tagBytes);
+    private int[] tagOffsets = new int[1 << 10];
+    private int games;
+
+    /**
+     * Adds the games of a PGN file
+     *
+     * @param pgn the PGN file
+     * @throws IOException if the file cannot be read
+     */
+    public void addGames(Path pgn) throws IOException {
+        try (PgnReader reader = new PgnReader(pgn)) {
+            while (reader.hasNext()) {
+                addGame(reader.next());
+            }
+        }
+    }
+
+    // Adds every position of a game, numbered after the games already added
+    void addGame(PgnGame pgnGame) throws IOException {
+        if (games == tagOffsets.length) {
+            tagOffsets = Arrays.copyOf(tagOffsets, games * 2);
+        }
+        tagOffsets[games++] = tagOutput.size();
+        for (String tag : PositionIndex.TAGS) {
+            String value = (tag.equals("Result")) ? pgnGame.getResult() : pgnGame.getTag(tag);
+            byte[] bytes = (value == null) ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(bytes.length, 0xFFFF);
+            tagOutput.writeShort(length);
+            tagOutput.write(bytes, 0, length);
+        }
+
+        ChessGame game = new ChessGame();
+        int ply = 0;
+        add(game.getPositionKey(), ply);
+        for (String san : pgnGame.getMoves()) {
+            try {
+                game.playMove(san);
+            } catch (ChessException e) {
+                break;
+            }
+            if (++ply > 0xFFFF) {
+                break;
+            }
+            add(game.getPositionKey(), ply);
+        }
+    }
+
+    private void add(long key, int ply) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size++] = ((long) games << 16) | ply;
+    }
+
+    /**
+     * Writes the index
+     *
+     * @param path the index file
+     * @return the number of distinct positions written
+     * @throws IOException if the file cannot be written
+     */
+    public int write(Path path) throws IOException {
+        sortByKey();
+
+        // Drop later plies of a position a game already reached (they follow the first one after the sort)
+        int postings = 0;
+        int keyCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (postings > 0 && keys[i] == keys[postings - 1]
+                    && (values[i] >>> 16) == (values[postings - 1] >>> 16)) {
+                continue;
+            }
+            if (postings == 0 || keys[i] != keys[postings - 1]) {
+                keyCount++;
+            }
+            keys[postings] = keys[i];
+            values[postings++] = values[i];
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(PositionIndex.MAGIC);
+            out.writeInt(PositionIndex.VERSION);
+            out.writeInt(games);
+            out.writeInt(keyCount);
+            out.writeInt(postings);
+            out.writeInt(tagOutput.size());
+
+            // Distinct keys with their first posting
+            for (int i = 0; i < postings; i++) {
+                if (i == 0 || keys[i] != keys[i - 1]) {
+                    out.writeLong(keys[i]);
+                    out.writeInt(i);
+                }
+            }
+            for (int i = 0; i < postings; i++) {
+                out.writeInt((int) (values[i] >>> 16));
+            }
+            for (int i = 0; i < postings; i++) {
+                out.writeShort((int) values[i]);
+            }
+            for (int i = 0; i < games; i++) {
+                out.writeInt(tagOffsets[i]);
+            }
+            tagBytes.writeTo(out);
+        }
+        return keyCount;
+    }
+
+    // Sorts the postings by unsigned key with a stable radix sort, which keeps them in game and ply order
+    private void sortByKey() {
+        long[] sortedKeys = new long[size];
+        long[] sortedValues = new long[size];
+        int[] counts = new int[257];
+
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[(int) ((keys[i] >>> shift) & 0xFF) + 1]++;
+            }
+            for (int i = 0; i < 256; i++) {
+                counts[i + 1] += counts[i];
+            }
+            for (int i = 0; i < size; i++) {
+                int target = counts[(int) ((keys[i] >>> shift) & 0xFF)]++;
+                sortedKeys[target] = keys[i];
+                sortedValues[target] = values[i];
+            }
+
+            long[] swap = keys;
+            keys = sortedKeys;
+            sortedKeys = swap;
+            swap = values;
+            values = sortedValues;
+            sortedValues = swap;
+        }
+    }
+
+    public int getGameCount() {
+        return games;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java chess.PositionIndexBuilder index.bin games.pgn...");
+            return;
+        }
+
+        long start = System.nanoTime();
+        PositionIndexBuilder builder = new PositionIndexBuilder();
+        for (int i = 1; i < args.length; i++) {
+            builder.addGames(Paths.get(args[i]));
+        }
+        int positions = builder.write(Paths.get(args[0]));
+
+        System.out.printf("%d games, %d positions indexed in %.3f s%n", builder.getGameCount(), positions,
+                (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,59 @@
+package chess;
+
+/**
+ * A game of a position index (see PositionIndex) that reached the position
+ * searched for, with the ply at which it first did and a few of its tags.
+ */
+public class PositionMatch {
+    private final int gameIndex;
+    private final int ply;
+    private final String[] tags; // Values of PositionIndex.TAGS, in that order
+
+    PositionMatch(int gameIndex, int ply, String[] tags) {
+        this.gameIndex = gameIndex;
+        this.ply = ply;
+        this.tags = tags;
+    }
+
+    /**
+     * Returns the position of the game among the indexed games (the first game
+     * of the first file is 1), which is PgnGame.getIndex when a single file was
+     * indexed
+     *
+     * @return the index of the game
+     */
+    public int getGameIndex() {
+        return gameIndex;
+    }
+
+    // Returns the number of moves played before the position was reached (0 is the starting position)
+    public int getPly() {
+        return ply;
+    }
+
+    public String getEvent() {
+        return tags[0];
+    }
+
+    public String getDate() {
+        return tags[1];
+    }
+
+    public String getWhite() {
+        return tags[2];
+    }
+
+    public String getBlack() {
+        return tags[3];
+    }
+
+    public String getResult() {
+        return tags[4];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Game %d, ply %d: %s - %s %s (%s, %s)", gameIndex, ply, getWhite(), getBlack(),
+                getResult(), getEvent(), getDate());
+    }
+}
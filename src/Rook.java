@@ -16,34 +16,11 @@ class Rook extends ChessPiece {
     }
 
     @Override
-    boolean isLegal(ChessPiece[][] board, int sRow, int sCol, int eRow, int eCol) throws ChessException {
-        checkStartAndEnd(board, sRow, sCol, eRow, eCol);
-        
-        // Check if there is a piece in the way
-        if(sRow == eRow) {
-            // Check vertical
-            int start = Math.min(sCol, eCol);
-            int end = Math.max(sCol, eCol);
+    long getTargets(Position position, int sRow, int sCol) {
+        ChessBoard board = position.getBoard();
 
-            for(int col = start+1; col < end; col++) {
-                if(board[sRow][col] != null) {
-                    return false;
-                }
-            }
-            return true;
-        } else if(sCol == eCol) {
-            // Check horizontal
-            int start = Math.min(sRow, eRow);
-            int end = Math.max(sRow, eRow);
-
-            for(int row = start+1; row < end; row++) {
-                if(board[row][sCol] != null) {
-                    return false;
-                }
-            }
-            return true;
-        } else {
-            return false;
-        }
+        // Every square along the row and column up to the first piece in the way
+        return Bitboards.rookAttacks(Bitboards.square(sRow, sCol), board.getOccupancy())
+                & ~board.getOccupancy(PIECE_COLOR);
     }
 }
@@ -0,0 +1,171 @@
+package chess;
+
+// Single pass scanner for moves in standard algebraic notation (e.g. e4, Nbd7, R1xe2, exd8=Q+, O-O-O#)
+// The move is decoded into an int descriptor, so parsing does not allocate
+// Descriptor bits:
+//   0-2   piece (index in ChessBoard.PIECE_TYPES)
+//   3-6   start column given for disambiguation (ANY if not given)
+//   7-10  start row given for disambiguation (ANY if not given)
+//   11-13 end row, 14-16 end column (not set for castling)
+//   17    capture (x)
+//   18-20 promotion piece (index in ChessBoard.PIECE_TYPES, 0 if none)
+//   21-22 castling (KINGSIDE or QUEENSIDE)
+//   23    check (+), 24 checkmate (#)
+final class SanParser {
+    static final int INVALID = -1;
+    static final int ANY = 8;
+    static final int KINGSIDE = 1;
+    static final int QUEENSIDE = 2;
+
+    private static final int PAWN = 0;
+    private static final int KING = 5;
+
+    private SanParser() {
+    }
+
+    // Returns the descriptor of the move, or INVALID if it is not in algebraic notation
+    static int parse(CharSequence san) {
+        int end = san.length();
+        int flags = 0;
+
+        // Suffixes: check, checkmate and annotation glyphs
+        while (end > 0) {
+            char c = san.charAt(end - 1);
+            if (c == '+') {
+                flags |= 1 << 23;
+            } else if (c == '#') {
+                flags |= 1 << 24;
+            } else if (c != '!' && c != '?') {
+                break;
+            }
+            end--;
+        }
+
+        if (end == 0) {
+            return INVALID;
+        }
+
+        // Castling (O-O, O-O-O, also written with zeros)
+        char first = san.charAt(0);
+        if (first == 'O' || first == '0') {
+            if (end == 3 && isCastling(san, first, 3)) {
+                return flags | KING | (ANY << 3) | (ANY << 7) | (KINGSIDE << 21);
+            } else if (end == 5 && isCastling(san, first, 5)) {
+                return flags | KING | (ANY << 3) | (ANY << 7) | (QUEENSIDE << 21);
+            }
+            return INVALID;
+        }
+
+        int start = 0;
+        int piece = PAWN;
+        if (first == 'N' || first == 'B' || first == 'R' || first == 'Q' || first == 'K') {
+            piece = ChessBoard.PIECE_TYPES.indexOf(first);
+            start = 1;
+        }
+
+        // Promotion (e8=Q or e8Q), pawns only
+        int promotion = 0;
+        char last = san.charAt(end - 1);
+        if (piece == PAWN && (last == 'N' || last == 'B' || last == 'R' || last == 'Q')) {
+            promotion = ChessBoard.PIECE_TYPES.indexOf(last);
+            end--;
+            if (end > start && san.charAt(end - 1) == '=') {
+                end--;
+            }
+        }
+
+        // End square
+        if (end - start < 2) {
+            return INVALID;
+        }
+        int eCol = san.charAt(end - 2) - 'a';
+        int eRow = '8' - san.charAt(end - 1);
+        if (eCol < 0 || eCol > 7 || eRow < 0 || eRow > 7) {
+            return INVALID;
+        }
+        end -= 2;
+
+        // Capture
+        int capture = 0;
+        if (end > start && san.charAt(end - 1) == 'x') {
+            capture = 1;
+            end--;
+        }
+
+        // Disambiguation: start column and/or start row, in that order
+        int sCol = ANY;
+        int sRow = ANY;
+        for (int i = start; i < end; i++) {
+            char c = san.charAt(i);
+            if (c >= 'a' && c <= 'h' && sCol == ANY && sRow == ANY) {
+                sCol = c - 'a';
+            } else if (c >= '1' && c <= '8' && sRow == ANY) {
+                sRow = '8' - c;
+            } else {
+                return INVALID;
+            }
+        }
+
+        // Pawns give their column only when they capture (exd5), and never their row
+        if (piece == PAWN && (sRow != ANY || (capture == 1) != (sCol != ANY))) {
+            return INVALID;
+        }
+
+        return flags | piece | (sCol << 3) | (sRow << 7) | (eRow << 11) | (eCol << 14) | (capture << 17)
+                | (promotion << 18);
+    }
+
+    static char piece(int descriptor) {
+        return ChessBoard.PIECE_TYPES.charAt(descriptor & 7);
+    }
+
+    static int sCol(int descriptor) {
+        return (descriptor >> 3) & 15;
+    }
+
+    static int sRow(int descriptor) {
+        return (descriptor >> 7) & 15;
+    }
+
+    static int eRow(int descriptor) {
+        return (descriptor >> 11) & 7;
+    }
+
+    static int eCol(int descriptor) {
+        return (descriptor >> 14) & 7;
+    }
+
+    static boolean isCapture(int descriptor) {
+        return (descriptor & (1 << 17)) != 0;
+    }
+
+    // Returns the symbol of the promotion piece, or 0 if there is none
+    static char promotion(int descriptor) {
+        int index = (descriptor >> 18) & 7;
+        return (index == 0) ? 0 : ChessBoard.PIECE_TYPES.charAt(index);
+    }
+
+    // Returns KINGSIDE, QUEENSIDE or 0
+    static int castling(int descriptor) {
+        return (descriptor >> 21) & 3;
+    }
+
+    static boolean isCheck(int descriptor) {
+        return (descriptor & (1 << 23)) != 0;
+    }
+
+    static boolean isCheckmate(int descriptor) {
+        return (descriptor & (1 << 24)) != 0;
+    }
+
+    // Returns true if the first length characters are O-O or O-O-O (with the given letter)
+    private static boolean isCastling(CharSequence san, char letter, int length) {
+        for (int i = 0; i < length; i++) {
+            char expected = (i % 2 == 0) ? letter : '-';
+            if (san.charAt(i) != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
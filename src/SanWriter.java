@@ -0,0 +1,86 @@
+package chess;
+
+// Writes packed moves (see Move) in standard algebraic notation, the reverse of SanParser
+// The piece letter is only followed by the start column and/or row when another piece of the same type can make
+// the same move (e.g. Nbd7, R1e2, Qh4xe1)
+final class SanWriter {
+    private SanWriter() {
+    }
+
+    // Returns the move in SAN, with a check (+) or checkmate (#) mark if withCheck is set
+    // The move must be legal in the position, which is left unchanged
+    static String toSan(Position position, int move, boolean withCheck) {
+        ChessBoard board = position.getBoard();
+        int sRow = Move.sRow(move), sCol = Move.sCol(move), eRow = Move.eRow(move), eCol = Move.eCol(move);
+        ChessPiece piece = board.getPiece(sRow, sCol);
+        char symbol = piece.getSymbol();
+        StringBuilder san = new StringBuilder(8);
+
+        if (symbol == 'K' && Math.abs(eCol - sCol) == 2) {
+            san.append((eCol == 6) ? "O-O" : "O-O-O");
+        } else {
+            boolean capture = board.getPiece(eRow, eCol) != null || position.isEnPassant(sRow, sCol, eRow, eCol);
+            if (symbol == 'p') {
+                if (capture) {
+                    san.append((char) ('a' + sCol));
+                }
+            } else {
+                san.append(symbol);
+                appendDisambiguation(san, position, piece, sRow, sCol, eRow, eCol);
+            }
+
+            if (capture) {
+                san.append('x');
+            }
+            san.append(ChessGame.getSquareName(eRow, eCol));
+
+            char promotion = Move.promotion(move);
+            if (promotion != 0) {
+                san.append('=').append(promotion);
+            }
+        }
+
+        if (withCheck) {
+            position.makeMove(move);
+            if (position.isInCheck()) {
+                san.append(MoveValidator.hasLegalMove(position, position.getTurnColor()) ? '+' : '#');
+            }
+            position.unmakeMove();
+        }
+        return san.toString();
+    }
+
+    // Appends the start column, row or square if other pieces of the same type can also reach the end square
+    private static void appendDisambiguation(StringBuilder san, Position position, ChessPiece piece, int sRow,
+            int sCol, int eRow, int eCol) {
+        ChessBoard board = position.getBoard();
+        long others = board.getPieceSet(piece.getColor(), piece.getSymbol()) & ~Bitboards.bit(sRow, sCol);
+        long endBit = Bitboards.bit(eRow, eCol);
+        boolean ambiguous = false, sameCol = false, sameRow = false;
+
+        while (others != 0) {
+            int sq = Long.numberOfTrailingZeros(others);
+            others &= others - 1;
+
+            int row = sq >> 3, col = sq & 7;
+            if ((board.getPiece(row, col).getTargets(position, row, col) & endBit) == 0 || !MoveValidator
+                    .getMoveStatus(position, piece.getColor(), row, col, eRow, eCol).isLegal()) {
+                continue;
+            }
+            ambiguous = true;
+            sameCol |= col == sCol;
+            sameRow |= row == sRow;
+        }
+
+        if (!ambiguous) {
+            return;
+        }
+        if (!sameCol) {
+            san.append((char) ('a' + sCol));
+        } else if (!sameRow) {
+            san.append((char) ('1' + 7 - sRow));
+        } else {
+            san.append(ChessGame.getSquareName(sRow, sCol));
+        }
+    }
+}
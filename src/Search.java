@@ -0,0 +1,501 @@
+package chess;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Chooses a move for the side to move. The search is a negamax alpha-beta
+ * search with principal-variation search (null windows for every move after
+ * the first), a quiescence search on captures at the leaves, and iterative
+ * deepening: depth 1, 2, 3... until a limit is reached, each iteration
+ * searching the previous principal variation first. Results are kept in a
+ * transposition table, which ParallelSearch shares between threads.
+ *
+ * A Search keeps its tables between calls but is not thread-safe: use one
+ * Search per thread.
+ *
+ * Usage: java chess.Search [--depth N] [--nodes N] [--time ms] [--threads N] [--hash MB] [--fen FEN]
+ *        [--moves "e4 e5 ..."]
+ */
+public class Search {
+    static final int INFINITY = 32000;
+    static final int MATE = 31000; // Score of being mated now, mates further away score closer to 0
+    static final int MAX_PLY = 128;
+    private static final int MAX_MOVES = 256;
+    private static final int CHECK_INTERVAL = 1024; // Nodes between two looks at the clock (a power of 2)
+    static final int DEFAULT_HASH_MB = 16;
+
+    // Helper threads of a parallel search skip some depths, so they are not all searching the same depth
+    // Helper i skips a depth if ((depth + SKIP_PHASE[i]) / SKIP_SIZE[i]) is odd
+    private static final int[] SKIP_SIZE = { 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4 };
+    private static final int[] SKIP_PHASE = { 0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7 };
+
+    // Move ordering scores
+    private static final int PV_SCORE = 1 << 30;
+    private static final int HASH_MOVE_SCORE = PV_SCORE - 1;
+    private static final int CAPTURE_SCORE = 1 << 20;
+    private static final int KILLER_SCORE = 1 << 19;
+
+    // One move list per ply, so the search does not allocate
+    private final int[][] moveLists = new int[MAX_PLY][MAX_MOVES];
+    private final int[][] moveScores = new int[MAX_PLY][MAX_MOVES];
+
+    // Triangular table of the principal variation found below each ply
+    private final int[][] pvTable = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    private int[] previousPv = new int[0];
+
+    // Quiet moves that caused a cutoff, per ply (killers) and per start and end square (history)
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[] history = new int[64 * 64];
+
+    private final TranspositionTable table;
+    private final int threadIndex; // 0 for the main thread, helpers of a parallel search count from 1
+
+    private Position position;
+    private long nodes;
+    private long nodeLimit;
+    private long deadline;
+    private long start;
+    private int rootDepth;
+    private volatile boolean stopped;
+    private Consumer<SearchResult> listener;
+
+    // Node count of every thread of a parallel search (null when searching alone)
+    // Each thread adds its nodes every CHECK_INTERVAL nodes
+    private AtomicLong sharedNodes;
+    private long flushedNodes;
+
+    /**
+     * Creates a search with its own transposition table
+     */
+    public Search() {
+        this(new TranspositionTable(DEFAULT_HASH_MB), 0);
+    }
+
+    // Creates a search using a (possibly shared) table
+    Search(TranspositionTable table, int threadIndex) {
+        this.table = table;
+        this.threadIndex = threadIndex;
+    }
+
+    /**
+     * Sets a listener called with the result of every completed iteration
+     *
+     * @param listener the listener (null for none)
+     */
+    public void setListener(Consumer<SearchResult> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops the running search as soon as possible (can be called from another
+     * thread). The search returns the result of the last completed iteration
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Searches the current position of a game. The game is not changed
+     *
+     * @param game   the game to find a move for
+     * @param limits the depth, node and time budget
+     * @return the best move found with its score and principal variation (null
+     *         if the search was stopped during the first iteration)
+     */
+    public SearchResult bestMove(ChessGame game, SearchLimits limits) {
+        return bestMove(new Position(game.getPosition()), limits);
+    }
+
+    /**
+     * Searches a position with iterative deepening. The position is unchanged
+     * afterwards
+     *
+     * @param position the position to search
+     * @param limits   the depth, node and time budget
+     * @return the result of the deepest completed iteration (null if the search
+     *         was stopped during the first one)
+     */
+    SearchResult bestMove(Position position, SearchLimits limits) {
+        table.newSearch();
+        prepare(null);
+        return iterate(position, limits);
+    }
+
+    // Resets the stop flag and sets the node counter shared with the other threads (null if there are none)
+    // Called before the search starts, so a stop from another thread cannot be missed
+    void prepare(AtomicLong sharedNodes) {
+        this.sharedNodes = sharedNodes;
+        stopped = false;
+    }
+
+    // Runs the iterative deepening (see bestMove)
+    SearchResult iterate(Position position, SearchLimits limits) {
+        start = System.nanoTime();
+        this.position = position;
+        nodes = 0;
+        flushedNodes = 0;
+        nodeLimit = (limits.getNodes() > 0) ? limits.getNodes() : Long.MAX_VALUE;
+        deadline = (limits.getMillis() > 0) ? start + limits.getMillis() * 1_000_000 : Long.MAX_VALUE;
+        previousPv = new int[0];
+        for (int[] killer : killers) {
+            Arrays.fill(killer, Move.NONE);
+        }
+        Arrays.fill(history, 0);
+
+        int maxDepth = (limits.getDepth() > 0) ? Math.min(limits.getDepth(), MAX_PLY / 2) : MAX_PLY / 2;
+        SearchResult result = null;
+
+        for (rootDepth = 1; rootDepth <= maxDepth && !stopped; rootDepth++) {
+            if (skipsDepth(rootDepth)) {
+                continue;
+            }
+
+            int score = negamax(rootDepth, 0, -INFINITY, INFINITY, true);
+            if (stopped) {
+                break;
+            }
+
+            previousPv = Arrays.copyOf(pvTable[0], pvLength[0]);
+            result = new SearchResult(previousPv, score, rootDepth, getTotalNodes(), System.nanoTime() - start);
+            if (listener != null) {
+                listener.accept(result);
+            }
+
+            // A deeper search cannot find a shorter mate
+            if (result.isMate() && MATE - Math.abs(score) <= rootDepth) {
+                break;
+            }
+
+            // The next iteration would most likely not finish in time
+            if (limits.getMillis() > 0 && System.nanoTime() - start > limits.getMillis() * 500_000) {
+                break;
+            }
+        }
+
+        flushNodes();
+        this.position = null;
+        return result;
+    }
+
+    // Returns true if this helper thread does not search the given depth (the main thread searches every depth)
+    private boolean skipsDepth(int depth) {
+        if (threadIndex == 0) {
+            return false;
+        }
+
+        int i = (threadIndex - 1) % SKIP_SIZE.length;
+        return ((depth + SKIP_PHASE[i]) / SKIP_SIZE[i]) % 2 != 0;
+    }
+
+    // Returns the score of the position for the side to move, searched to the given depth
+    private int negamax(int depth, int ply, int alpha, int beta, boolean onPv) {
+        pvLength[ply] = ply;
+
+        // Repetitions and the fifty-move rule are draws inside the tree
+        if (ply > 0 && (position.getRepetitions() > 1 || position.getHalfmoveClock() >= 100)) {
+            return 0;
+        }
+
+        // Positions in check are searched one ply deeper
+        boolean inCheck = position.isInCheck();
+        if (inCheck) {
+            depth++;
+        }
+
+        if (depth <= 0) {
+            return quiescence(ply, alpha, beta);
+        }
+        if (ply >= MAX_PLY - 1) {
+            return Evaluation.evaluate(position);
+        }
+
+        countNode();
+        if (stopped) {
+            return 0;
+        }
+
+        // A result of an earlier search of this position (by this or another thread) can end the search here,
+        // except on the principal variation, which has to be searched to keep it complete
+        long key = position.getKey();
+        long entry = table.probe(key);
+        int hashMove = Move.NONE;
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            int score = TranspositionTable.fromStored(TranspositionTable.score(entry), ply);
+            int bound = TranspositionTable.bound(entry);
+            if (ply > 0 && beta - alpha == 1 && TranspositionTable.depth(entry) >= depth
+                    && (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && score >= beta)
+                            || (bound == TranspositionTable.UPPER && score <= alpha))) {
+                return score;
+            }
+        }
+
+        int count = MoveValidator.generateMoves(position, moveLists[ply], false);
+        if (count == 0) {
+            return inCheck ? -MATE + ply : 0;
+        }
+        scoreMoves(ply, count, onPv, hashMove);
+
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestMove = Move.NONE;
+        for (int i = 0; i < count; i++) {
+            int move = pickMove(ply, i, count);
+            boolean quiet = isQuiet(move);
+            boolean childOnPv = onPv && ply < previousPv.length && move == previousPv[ply];
+
+            position.makeMove(move);
+            int score;
+            if (i == 0) {
+                score = -negamax(depth - 1, ply + 1, -beta, -alpha, childOnPv);
+            } else {
+                // Prove the move is worse with a null window, search it fully only if that fails
+                score = -negamax(depth - 1, ply + 1, -alpha - 1, -alpha, false);
+                if (score > alpha && score < beta) {
+                    score = -negamax(depth - 1, ply + 1, -beta, -alpha, false);
+                }
+            }
+            position.unmakeMove();
+
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    bestMove = move;
+                    updatePv(ply, move);
+
+                    if (alpha >= beta) {
+                        if (quiet) {
+                            storeKiller(ply, move);
+                            history[move & 0xFFF] += depth * depth;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = (best >= beta) ? TranspositionTable.LOWER
+                : (best > originalAlpha) ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        table.store(key, bestMove, TranspositionTable.toStored(best, ply), depth, bound);
+        return best;
+    }
+
+    // Searches captures only, until the position is quiet, so the evaluation is not taken in the middle of an exchange
+    private int quiescence(int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+
+        countNode();
+        if (stopped) {
+            return 0;
+        }
+
+        // The side to move can usually do at least as well as the static evaluation by not capturing
+        int best = Evaluation.evaluate(position);
+        if (best >= beta || ply >= MAX_PLY - 1) {
+            return best;
+        }
+        if (best > alpha) {
+            alpha = best;
+        }
+
+        int count = MoveValidator.generateMoves(position, moveLists[ply], true);
+        scoreMoves(ply, count, false, Move.NONE);
+
+        for (int i = 0; i < count; i++) {
+            int move = pickMove(ply, i, count);
+
+            position.makeMove(move);
+            int score = -quiescence(ply + 1, -beta, -alpha);
+            position.unmakeMove();
+
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        return best;
+    }
+
+    // Counts a node and stops the search when a limit is reached (never during the first iteration)
+    // NOTE: In a parallel search, the node limit is checked against the total every CHECK_INTERVAL nodes
+    private void countNode() {
+        nodes++;
+        if ((nodes & (CHECK_INTERVAL - 1)) == 0) {
+            flushNodes();
+            if (rootDepth > 1 && (System.nanoTime() >= deadline || getTotalNodes() >= nodeLimit)) {
+                stopped = true;
+            }
+        } else if (rootDepth > 1 && sharedNodes == null && nodes >= nodeLimit) {
+            stopped = true;
+        }
+    }
+
+    // Adds the nodes counted since the last call to the shared counter
+    private void flushNodes() {
+        if (sharedNodes != null) {
+            sharedNodes.addAndGet(nodes - flushedNodes);
+            flushedNodes = nodes;
+        }
+    }
+
+    // Returns the nodes searched by this thread, or by every thread of a parallel search
+    private long getTotalNodes() {
+        return (sharedNodes == null) ? nodes : sharedNodes.get() + nodes - flushedNodes;
+    }
+
+    // Scores the moves of a ply for ordering: principal variation move, transposition table move, captures (most
+    // valuable victim, least valuable attacker), promotions, killers, then the other quiet moves by history
+    private void scoreMoves(int ply, int count, boolean onPv, int hashMove) {
+        ChessBoard board = position.getBoard();
+        int[] moves = moveLists[ply];
+        int[] scores = moveScores[ply];
+        int pvMove = (onPv && ply < previousPv.length) ? previousPv[ply] : Move.NONE;
+
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (move == pvMove) {
+                scores[i] = PV_SCORE;
+                continue;
+            } else if (move == hashMove) {
+                scores[i] = HASH_MOVE_SCORE;
+                continue;
+            }
+
+            ChessPiece piece = board.getPiece(Move.sRow(move), Move.sCol(move));
+            ChessPiece victim = board.getPiece(Move.eRow(move), Move.eCol(move));
+            int victimType = (victim != null) ? ChessBoard.PIECE_TYPES.indexOf(victim.getSymbol())
+                    : (piece.getSymbol() == 'p' && Move.sCol(move) != Move.eCol(move)) ? 0 : -1; // En passant
+            char promotion = Move.promotion(move);
+
+            if (victimType >= 0 || promotion == 'Q') {
+                int gain = (victimType >= 0) ? Evaluation.PIECE_VALUES[victimType] * 16 : 0;
+                gain += (promotion != 0) ? Evaluation.PIECE_VALUES[ChessBoard.PIECE_TYPES.indexOf(promotion)] : 0;
+                scores[i] = CAPTURE_SCORE + gain - ChessBoard.PIECE_TYPES.indexOf(piece.getSymbol());
+            } else if (move == killers[ply][0] || move == killers[ply][1]) {
+                scores[i] = KILLER_SCORE;
+            } else {
+                scores[i] = Math.min(history[move & 0xFFF], KILLER_SCORE - 1);
+            }
+        }
+    }
+
+    // Moves the best scored move left of index i to index i and returns it (selection sort, one step at a time
+    // because most nodes only look at the first few moves)
+    private int pickMove(int ply, int i, int count) {
+        int[] moves = moveLists[ply];
+        int[] scores = moveScores[ply];
+
+        int best = i;
+        for (int j = i + 1; j < count; j++) {
+            if (scores[j] > scores[best]) {
+                best = j;
+            }
+        }
+
+        int move = moves[best];
+        moves[best] = moves[i];
+        moves[i] = move;
+        int score = scores[best];
+        scores[best] = scores[i];
+        scores[i] = score;
+        return move;
+    }
+
+    // Returns true if the move is neither a capture nor a promotion
+    private boolean isQuiet(int move) {
+        ChessBoard board = position.getBoard();
+        return Move.promotion(move) == 0 && board.getPiece(Move.eRow(move), Move.eCol(move)) == null
+                && !position.isEnPassant(Move.sRow(move), Move.sCol(move), Move.eRow(move), Move.eCol(move));
+    }
+
+    private void storeKiller(int ply, int move) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+    }
+
+    // The principal variation of a ply is its best move followed by the principal variation of the next ply
+    private void updatePv(int ply, int move) {
+        pvTable[ply][ply] = move;
+        int length = pvLength[ply + 1];
+        System.arraycopy(pvTable[ply + 1], ply + 1, pvTable[ply], ply + 1, length - ply - 1);
+        pvLength[ply] = length;
+    }
+
+    public static void main(String[] args) {
+        int depth = 0;
+        long nodes = 0;
+        long millis = 0;
+        int threads = 1;
+        int hashMb = DEFAULT_HASH_MB;
+        ChessGame game = new ChessGame();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--nodes":
+                    nodes = Long.parseLong(args[++i]);
+                    break;
+                case "--time":
+                    millis = Long.parseLong(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--hash":
+                    hashMb = Integer.parseInt(args[++i]);
+                    break;
+                case "--fen":
+                    game = ChessGame.fromFen(args[++i]);
+                    break;
+                case "--moves":
+                    for (String move : args[++i].trim().split("\\s+")) {
+                        game.makeMove(move);
+                    }
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: java chess.Search [--depth N] [--nodes N] [--time ms] [--threads N] "
+                            + "[--hash MB] [--fen FEN] [--moves \"e4 e5 ...\"]");
+                    return;
+            }
+        }
+
+        // Without limits, think for five seconds
+        if (depth == 0 && nodes == 0 && millis == 0) {
+            millis = 5000;
+        }
+
+        SearchResult result;
+        try (ParallelSearch search = new ParallelSearch(threads, hashMb)) {
+            search.setListener(info -> System.out.println("info " + info));
+            result = search.bestMove(game, new SearchLimits(depth, nodes, millis));
+        }
+        System.out.println("bestmove " + ((result == null || result.getBestMove() == null) ? "(none)"
+                : result.getBestMove()));
+    }
+}
@@ -0,0 +1,52 @@
+package chess;
+
+/**
+ * The budget of a search: a maximum depth, a number of nodes and/or a time.
+ * The search stops at the first limit reached. A limit of 0 means no limit.
+ */
+public class SearchLimits {
+    private final int depth;
+    private final long nodes;
+    private final long millis;
+
+    /**
+     * Creates limits for a search
+     *
+     * @param depth  the maximum depth in plies (0 for no limit)
+     * @param nodes  the maximum number of nodes (0 for no limit)
+     * @param millis the maximum time in milliseconds (0 for no limit)
+     */
+    public SearchLimits(int depth, long nodes, long millis) {
+        if (depth < 0 || nodes < 0 || millis < 0) {
+            throw new ChessException("Invalid search limits");
+        }
+
+        this.depth = depth;
+        this.nodes = nodes;
+        this.millis = millis;
+    }
+
+    public static SearchLimits depth(int depth) {
+        return new SearchLimits(depth, 0, 0);
+    }
+
+    public static SearchLimits nodes(long nodes) {
+        return new SearchLimits(0, nodes, 0);
+    }
+
+    public static SearchLimits time(long millis) {
+        return new SearchLimits(0, 0, millis);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+}
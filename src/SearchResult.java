@@ -0,0 +1,91 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of one iteration of a search: the best move and the line the
+ * engine expects (principal variation), its score and the work done.
+ */
+public class SearchResult {
+    private final int[] principalVariation; // Packed moves (see Move)
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long nanos;
+
+    SearchResult(int[] principalVariation, int score, int depth, long nodes, long nanos) {
+        this.principalVariation = principalVariation;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.nanos = nanos;
+    }
+
+    // Returns the best move in coordinate notation (e.g. e2e4, e7e8q), or null if there is no legal move
+    public String getBestMove() {
+        return (principalVariation.length == 0) ? null : Move.toString(principalVariation[0]);
+    }
+
+    // Returns the best move as a packed move, or Move.NONE if there is no legal move
+    int getMove() {
+        return (principalVariation.length == 0) ? Move.NONE : principalVariation[0];
+    }
+
+    // Returns the moves of the principal variation in coordinate notation
+    public List<String> getPrincipalVariation() {
+        List<String> moves = new ArrayList<>(principalVariation.length);
+        for (int move : principalVariation) {
+            moves.add(Move.toString(move));
+        }
+        return Collections.unmodifiableList(moves);
+    }
+
+    int[] getPackedPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    // Returns the score in centipawns from the side to move's point of view (see isMate for mate scores)
+    public int getScore() {
+        return score;
+    }
+
+    // Returns true if the score is a forced mate (for either side)
+    public boolean isMate() {
+        return Math.abs(score) >= Search.MATE - Search.MAX_PLY;
+    }
+
+    // Returns the number of moves to mate, negative if the side to move gets mated (0 if there is no mate)
+    public int getMateIn() {
+        if (!isMate()) {
+            return 0;
+        }
+
+        int moves = (Search.MATE - Math.abs(score) + 1) / 2;
+        return (score > 0) ? moves : -moves;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public double getSeconds() {
+        return nanos / 1e9;
+    }
+
+    public double getNodesPerSecond() {
+        return nodes / Math.max(getSeconds(), 1e-9);
+    }
+
+    @Override
+    public String toString() {
+        String scoreText = isMate() ? "mate " + getMateIn() : "cp " + score;
+        return String.format("depth %d score %s nodes %d nps %.0f time %d pv %s", depth, scoreText, nodes,
+                getNodesPerSecond(), nanos / 1_000_000, String.join(" ", getPrincipalVariation()));
+    }
+}
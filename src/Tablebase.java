@@ -0,0 +1,228 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A directory of endgame tables generated by TablebaseGenerator, giving the
+ * result and the distance to mate of every position of their material (e.g.
+ * all KBNK positions). The files are memory-mapped, so a probe reads a single
+ * entry.
+ *
+ * File layout (big-endian): a 24-byte header (magic "CTBL", version, bits per
+ * entry, longest mate in plies, number of entries), then one entry per index
+ * (see TablebaseMaterial), packed on as many bits as needed from the most
+ * significant bit of each byte. An entry is the distance to mate in plies
+ * shifted left by 2, or'ed with the result for the side to move (0 draw, 1
+ * win, 2 loss, 3 illegal position).
+ *
+ * Positions with castling rights, a possible en passant capture or more than
+ * 5 pieces are not in the tables.
+ *
+ * Usage: java chess.Tablebase directory "FEN"
+ */
+public class Tablebase implements Closeable {
+    static final int MAGIC = 0x4354424C; // "CTBL"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final String EXTENSION = ".tbl";
+
+    static final int DRAW = 0;
+    static final int WIN = 1;
+    static final int LOSS = 2;
+    static final int ILLEGAL = 3;
+
+    private final Map<String, Table> tables = new HashMap<>();
+
+    private static final class Table {
+        final TablebaseMaterial material;
+        final ByteBuffer buffer;
+        final int bits;
+        final long mask;
+
+        Table(TablebaseMaterial material, ByteBuffer buffer, int bits) {
+            this.material = material;
+            this.buffer = buffer;
+            this.bits = bits;
+            mask = (1L << bits) - 1;
+        }
+
+        // Returns the entry of an index (bits read from the 8 bytes starting at the byte holding its first bit)
+        int get(long index) {
+            long bit = index * bits;
+            long word = buffer.getLong(HEADER_BYTES + (int) (bit >>> 3));
+            return (int) ((word >>> (64 - (bit & 7) - bits)) & mask);
+        }
+    }
+
+    /**
+     * Opens every table of a directory
+     *
+     * @param directory the directory holding the tables (e.g. KQK.tbl)
+     * @throws IOException if a table cannot be read or is not valid
+     */
+    public Tablebase(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                name = name.substring(0, name.length() - EXTENSION.length());
+                TablebaseMaterial material;
+                try {
+                    material = TablebaseMaterial.of(name);
+                } catch (ChessException e) {
+                    continue; // Not a table
+                }
+                tables.put(name, open(path, material));
+            }
+        }
+    }
+
+    // Maps a table file (the mapping stays valid after the channel is closed)
+    private static Table open(Path path, TablebaseMaterial material) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Table file is larger than 2 GB: " + path);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a table file: " + path);
+            }
+            int bits = buffer.getInt(8);
+            if (bits < 2 || bits > 32 || buffer.getLong(16) != material.size
+                    || HEADER_BYTES + (material.size * bits + 7) / 8 + 8 > buffer.capacity()) {
+                throw new IOException("Invalid or truncated table file: " + path);
+            }
+            return new Table(material, buffer, bits);
+        }
+    }
+
+    /**
+     * Returns the result of the current position of a game
+     *
+     * @param game the game
+     * @return the result for the side to move, or null if the position is not
+     *         in the tables
+     */
+    public TablebaseResult probe(ChessGame game) {
+        return probe(game.getPosition());
+    }
+
+    // Returns the result of a position for the side to move, or null if it is not in the tables
+    TablebaseResult probe(Position position) {
+        if (position.getCastlingRights() != 0 || position.getEnPassantCol() != -1) {
+            return null;
+        }
+
+        ChessBoard board = position.getBoard();
+        char[] symbols = new char[TablebaseMaterial.MAX_PIECES];
+        boolean[] white = new boolean[TablebaseMaterial.MAX_PIECES];
+        int[] squares = new int[TablebaseMaterial.MAX_PIECES];
+        int count = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            ChessPiece piece = board.getPiece(sq >> 3, sq & 7);
+            if (piece == null) {
+                continue;
+            }
+            if (count == TablebaseMaterial.MAX_PIECES) {
+                return null;
+            }
+            symbols[count] = piece.getSymbol();
+            white[count] = piece.getColor() == ChessPiece.Color.WHITE;
+            squares[count++] = sq;
+        }
+        if (count == 2) {
+            return TablebaseResult.DRAW;
+        }
+
+        String whiteSide = TablebaseMaterial.getSide(symbols, white, count, true);
+        String blackSide = TablebaseMaterial.getSide(symbols, white, count, false);
+        Table table = tables.get(TablebaseMaterial.getName(whiteSide, blackSide));
+        if (table == null) {
+            return null;
+        }
+
+        boolean whiteToMove = position.getTurnColor() == ChessPiece.Color.WHITE;
+        long index = table.material.index(symbols, white, squares, whiteToMove,
+                TablebaseMaterial.isSwapped(whiteSide, blackSide), new int[TablebaseMaterial.MAX_PIECES]);
+        int entry = table.get(index);
+        int wdl = entry & 3;
+        return (wdl == ILLEGAL) ? null : new TablebaseResult(wdl, entry >>> 2);
+    }
+
+    /**
+     * Returns the best move of the current position of a game: the fastest
+     * mate when winning, a drawing move when possible, otherwise the move
+     * delaying mate the longest
+     *
+     * @param game the game
+     * @return the move in SAN, or null if the position or one of the positions
+     *         after a legal move is not in the tables, or if there is no legal
+     *         move
+     */
+    public String bestMove(ChessGame game) {
+        Position position = game.getPosition();
+        List<int[]> moves = MoveValidator.getLegalMoves(position, position.getTurnColor());
+
+        int best = Move.NONE;
+        int bestScore = Integer.MIN_VALUE;
+        for (int[] m : moves) {
+            int move = Move.encode(m[0], m[1], m[2], m[3], (char) m[4]);
+            position.makeMove(move);
+            TablebaseResult result = probe(position);
+            position.unmakeMove();
+            if (result == null) {
+                return null;
+            }
+
+            // The result is the opponent's: its fastest loss first, then draws, then its slowest win
+            int distance = result.getDistanceToMate();
+            int score = result.isLoss() ? Integer.MAX_VALUE - distance
+                    : result.isDraw() ? 0 : distance - Short.MAX_VALUE;
+            if (score > bestScore) {
+                bestScore = score;
+                best = move;
+            }
+        }
+        return (best == Move.NONE) ? null : SanWriter.toSan(position, best, true);
+    }
+
+    @Override
+    public void close() {
+        tables.clear();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java chess.Tablebase directory \"FEN\"");
+            return;
+        }
+
+        try (Tablebase tablebase = new Tablebase(Paths.get(args[0]))) {
+            ChessGame game = ChessGame.fromFen(args[1]);
+            long start = System.nanoTime();
+            TablebaseResult result = tablebase.probe(game);
+            long nanos = System.nanoTime() - start;
+            if (result == null) {
+                System.out.println("Position not in the tables");
+                return;
+            }
+
+            System.out.printf("%s (%d plies), probed in %.1f us%n", result, result.getDistanceToMate(), nanos / 1e3);
+            String move = tablebase.bestMove(game);
+            if (move != null) {
+                System.out.println("Best move: " + move);
+            }
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package chess;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates endgame tables (see Tablebase) by retrograde analysis: every
+ * position of a material set (e.g. KBNK) is solved, starting from the
+ * checkmates and going back one ply per sweep. In sweep n, a position is won
+ * in n plies if a move reaches a position lost in n-1 plies, and lost in n
+ * plies if every move reaches a position won in at most n-1 plies. What is
+ * still open when no sweep can resolve more positions is a draw.
+ *
+ * Captures and promotions lead to smaller tables, which are generated first
+ * (e.g. KPK needs KQK, KRK, KBK and KNK). Each sweep is split between the
+ * threads, and a thread only writes the positions of its own range. A thread
+ * also reads positions that other threads write during the same sweep,
+ * without synchronization, so it may see either the old or the new value.
+ * This is still correct without locking because only results of earlier
+ * sweeps are used: values written in the current sweep (won or lost in sweep
+ * plies) fail the "at most sweep - 1" checks of evaluate and count as
+ * unresolved. Each sweep waits for all of its tasks (invokeAll), so the next
+ * sweep sees every value written.
+ *
+ * Moves follow the rules of the piece classes (with the Bitboards attack
+ * tables), without castling or en passant. Tables hold up to 5 pieces; the
+ * tables being generated are kept in memory with 2 bytes per position (10 MB
+ * for 4 pieces, 670 MB and more for 5 pieces).
+ *
+ * Usage: java chess.TablebaseGenerator directory KQK KRK KPK KBNK... [--threads N]
+ */
+public class TablebaseGenerator {
+    // States of positions during generation (from the side to move), 0 while unresolved
+    // Won in d plies: d (d >= 1), lost in d plies: -(d + 1) (checkmated: -1)
+    static final short ILLEGAL = Short.MIN_VALUE;
+    static final short DRAW = Short.MAX_VALUE; // Stalemates and positions after captures leaving only Kings
+
+    private static final String PROMOTIONS = "QRBN";
+
+    private final Path directory;
+    private final int threads;
+
+    // Every table generated so far (needed by the larger ones)
+    private final Map<String, Table> tables = new HashMap<>();
+
+    private static final class Table {
+        final TablebaseMaterial material;
+        final short[] states;
+        final int longestMate; // Longest distance to mate in plies
+
+        Table(TablebaseMaterial material, short[] states, int longestMate) {
+            this.material = material;
+            this.states = states;
+            this.longestMate = longestMate;
+        }
+    }
+
+    // Scratch arrays of a thread
+    private static final class Worker {
+        final int[] squares = new int[TablebaseMaterial.MAX_PIECES];
+        final char[] childSymbols = new char[TablebaseMaterial.MAX_PIECES];
+        final boolean[] childWhite = new boolean[TablebaseMaterial.MAX_PIECES];
+        final int[] childSquares = new int[TablebaseMaterial.MAX_PIECES];
+        final int[] scratch = new int[TablebaseMaterial.MAX_PIECES];
+    }
+
+    /**
+     * Creates a generator
+     *
+     * @param directory the directory the tables are written to
+     * @param threads   the number of threads sharing each sweep
+     */
+    public TablebaseGenerator(Path directory, int threads) {
+        if (threads < 1) {
+            throw new ChessException("Invalid number of threads: " + threads);
+        }
+        this.directory = directory;
+        this.threads = threads;
+    }
+
+    /**
+     * Generates a table and the smaller tables it needs, and writes them to the
+     * directory
+     *
+     * @param name the material of the table, stronger side first (e.g. KBNK)
+     * @throws ChessException if the name is not a valid table
+     * @throws IOException    if a table cannot be written
+     */
+    public void generate(String name) throws IOException {
+        if (tables.containsKey(name)) {
+            return;
+        }
+        TablebaseMaterial material = TablebaseMaterial.of(name);
+        if (material.size > Integer.MAX_VALUE - 8) {
+            throw new ChessException("Table " + name + " is too large to generate");
+        }
+
+        int longestSubMate = 0;
+        for (String subName : getSubTables(material)) {
+            generate(subName);
+            longestSubMate = Math.max(longestSubMate, tables.get(subName).longestMate);
+        }
+
+        long start = System.nanoTime();
+        short[] states = new short[(int) material.size];
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "tablebase-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            // Captures and promotions can win or lose later than the last position resolved in this table
+            for (int sweep = 0;; sweep++) {
+                long resolved = runSweep(pool, material, states, sweep);
+                if (sweep > 0 && resolved == 0 && sweep > longestSubMate + 1) {
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int longestMate = 0;
+        long wins = 0, draws = 0, losses = 0;
+        for (short state : states) {
+            if (state == ILLEGAL) {
+                continue;
+            } else if (state == 0 || state == DRAW) {
+                draws++;
+            } else if (state > 0) {
+                wins++;
+                longestMate = Math.max(longestMate, state);
+            } else {
+                losses++;
+                longestMate = Math.max(longestMate, -state - 1);
+            }
+        }
+        tables.put(name, new Table(material, states, longestMate));
+        write(material, states, longestMate);
+
+        System.out.printf("%s: %d positions, %d wins, %d draws, %d losses, longest mate %d plies (%.1f s)%n",
+                name, wins + draws + losses, wins, draws, losses, longestMate, (System.nanoTime() - start) / 1e9);
+    }
+
+    // Returns the tables reached by captures and promotions (tables with only Kings are draws and are left out)
+    private static Set<String> getSubTables(TablebaseMaterial material) {
+        Set<String> names = new LinkedHashSet<>();
+        int n = material.count;
+        char[] symbols = new char[n];
+        for (int captured = -1; captured < n; captured++) {
+            for (int pawn = -1; pawn < n; pawn++) {
+                if ((captured != -1 && material.symbols[captured] == 'K')
+                        || (pawn != -1 && (pawn == captured || material.symbols[pawn] != 'p'))) {
+                    continue;
+                }
+                for (int promotion = 0; promotion < ((pawn == -1) ? 1 : PROMOTIONS.length()); promotion++) {
+                    if (captured == -1 && pawn == -1) {
+                        continue;
+                    }
+
+                    int count = 0;
+                    boolean[] white = new boolean[n];
+                    for (int i = 0; i < n; i++) {
+                        if (i != captured) {
+                            symbols[count] = (i == pawn) ? PROMOTIONS.charAt(promotion) : material.symbols[i];
+                            white[count++] = material.white[i];
+                        }
+                    }
+                    if (count > 2) {
+                        names.add(TablebaseMaterial.getName(TablebaseMaterial.getSide(symbols, white, count, true),
+                                TablebaseMaterial.getSide(symbols, white, count, false)));
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    // Runs a sweep over every unresolved position, split between the threads, and returns how many it resolved
+    private long runSweep(ExecutorService pool, TablebaseMaterial material, short[] states, int sweep) {
+        int chunks = threads * 8;
+        long chunkSize = (material.size + chunks - 1) / chunks;
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (long from = 0; from < material.size; from += chunkSize) {
+            long start = from, end = Math.min(material.size, from + chunkSize);
+            tasks.add(() -> sweep(material, states, sweep, start, end));
+        }
+
+        long resolved = 0;
+        try {
+            for (Future<Long> future : pool.invokeAll(tasks)) {
+                resolved += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tablebase generation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tablebase generation failed", e.getCause());
+        }
+        return resolved;
+    }
+
+    private long sweep(TablebaseMaterial material, short[] states, int sweep, long from, long to) {
+        Worker worker = new Worker();
+        long resolved = 0;
+        for (long index = from; index < to; index++) {
+            if (states[(int) index] == 0) {
+                short state = evaluate(material, states, index, sweep, worker);
+                if (state != 0) {
+                    states[(int) index] = state;
+                    resolved++;
+                }
+            }
+        }
+        return resolved;
+    }
+
+    // Returns the state of a position decided by the results of sweeps before this one, 0 if it is still open
+    // Sweep 0 finds illegal positions, checkmates and stalemates
+    private short evaluate(TablebaseMaterial material, short[] states, long index, int sweep, Worker worker) {
+        int[] squares = worker.squares;
+        boolean whiteToMove = material.decode(index, squares);
+        int n = material.count;
+
+        long occupancy = 0, own = 0;
+        for (int i = 0; i < n; i++) {
+            long bit = 1L << squares[i];
+            if ((occupancy & bit) != 0 || (material.symbols[i] == 'p' && (squares[i] < 8 || squares[i] >= 56))) {
+                return ILLEGAL;
+            }
+            occupancy |= bit;
+            if (material.white[i] == whiteToMove) {
+                own |= bit;
+            }
+        }
+
+        int ownKing = whiteToMove ? 0 : material.blackKing;
+        int enemyKing = whiteToMove ? material.blackKing : 0;
+        if (isAttacked(material, squares, squares[enemyKing], whiteToMove, occupancy, -1)) {
+            return ILLEGAL; // The side that just moved left its King in check
+        }
+
+        boolean anyMove = false;
+        boolean allLost = sweep > 0;
+        for (int i = 0; i < n; i++) {
+            if (material.white[i] != whiteToMove) {
+                continue;
+            }
+
+            int from = squares[i];
+            long targets = getTargets(material.symbols[i], from, whiteToMove, occupancy, own);
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+
+                int captured = -1;
+                if ((occupancy & (1L << to)) != 0) {
+                    for (int j = 0; j < n; j++) {
+                        if (squares[j] == to) {
+                            captured = j;
+                        }
+                    }
+                }
+
+                squares[i] = to;
+                long after = (occupancy & ~(1L << from)) | (1L << to);
+                if (isAttacked(material, squares, squares[ownKing], !whiteToMove, after, captured)) {
+                    squares[i] = from;
+                    continue;
+                }
+                anyMove = true;
+
+                boolean promotes = material.symbols[i] == 'p' && (to < 8 || to >= 56);
+                for (int promotion = 0; promotion < (promotes ? PROMOTIONS.length() : 1); promotion++) {
+                    short child = (captured == -1 && !promotes)
+                            ? states[(int) material.index(squares, !whiteToMove)]
+                            : probeSubTable(material, squares, i, promotes ? promotion : -1, captured, !whiteToMove,
+                                    worker);
+
+                    // A move to a position the opponent loses wins; the first sweep to find one is the shortest mate
+                    if (child < 0 && child != ILLEGAL && -child - 1 <= sweep - 1) {
+                        squares[i] = from;
+                        return (short) sweep;
+                    }
+                    if (child <= 0 || child == DRAW || child > sweep - 1) {
+                        allLost = false;
+                    }
+                }
+                squares[i] = from;
+            }
+        }
+
+        if (!anyMove) {
+            boolean inCheck = isAttacked(material, squares, squares[ownKing], !whiteToMove, occupancy, -1);
+            return inCheck ? -1 : DRAW;
+        }
+        return allLost ? (short) (-sweep - 1) : 0;
+    }
+
+    // Returns the state of the position after a capture or a promotion, from its smaller table
+    private short probeSubTable(TablebaseMaterial material, int[] squares, int moved, int promotion, int captured,
+            boolean whiteToMove, Worker worker) {
+        int count = 0;
+        for (int i = 0; i < material.count; i++) {
+            if (i != captured) {
+                worker.childSymbols[count] = (i == moved && promotion >= 0) ? PROMOTIONS.charAt(promotion)
+                        : material.symbols[i];
+                worker.childWhite[count] = material.white[i];
+                worker.childSquares[count++] = squares[i];
+            }
+        }
+        if (count == 2) {
+            return DRAW;
+        }
+
+        String whiteSide = TablebaseMaterial.getSide(worker.childSymbols, worker.childWhite, count, true);
+        String blackSide = TablebaseMaterial.getSide(worker.childSymbols, worker.childWhite, count, false);
+        Table table = tables.get(TablebaseMaterial.getName(whiteSide, blackSide));
+        long index = table.material.index(worker.childSymbols, worker.childWhite, worker.childSquares, whiteToMove,
+                TablebaseMaterial.isSwapped(whiteSide, blackSide), worker.scratch);
+        return table.states[(int) index];
+    }
+
+    // Returns the squares a piece can move to (own pieces excluded), without checking for checks
+    private static long getTargets(char symbol, int sq, boolean white, long occupancy, long own) {
+        switch (symbol) {
+            case 'K':
+                return Bitboards.KING_ATTACKS[sq] & ~own;
+            case 'Q':
+                return Bitboards.queenAttacks(sq, occupancy) & ~own;
+            case 'R':
+                return Bitboards.rookAttacks(sq, occupancy) & ~own;
+            case 'B':
+                return Bitboards.bishopAttacks(sq, occupancy) & ~own;
+            case 'N':
+                return Bitboards.KNIGHT_ATTACKS[sq] & ~own;
+            default:
+                // White pawns move towards row 0, black pawns towards row 7
+                int forward = white ? sq - 8 : sq + 8;
+                long targets = Bitboards.PAWN_ATTACKS[white ? 0 : 1][sq] & occupancy & ~own;
+                if ((occupancy & (1L << forward)) == 0) {
+                    targets |= 1L << forward;
+                    int doubleStep = white ? sq - 16 : sq + 16;
+                    if ((sq >> 3) == (white ? 6 : 1) && (occupancy & (1L << doubleStep)) == 0) {
+                        targets |= 1L << doubleStep;
+                    }
+                }
+                return targets;
+        }
+    }
+
+    // Returns true if a piece of the given color (other than the excluded one) attacks the square
+    private static boolean isAttacked(TablebaseMaterial material, int[] squares, int target, boolean byWhite,
+            long occupancy, int excluded) {
+        long bit = 1L << target;
+        for (int k = 0; k < material.count; k++) {
+            if (k == excluded || material.white[k] != byWhite) {
+                continue;
+            }
+            int sq = squares[k];
+            long attacks;
+            switch (material.symbols[k]) {
+                case 'K':
+                    attacks = Bitboards.KING_ATTACKS[sq];
+                    break;
+                case 'Q':
+                    attacks = Bitboards.queenAttacks(sq, occupancy);
+                    break;
+                case 'R':
+                    attacks = Bitboards.rookAttacks(sq, occupancy);
+                    break;
+                case 'B':
+                    attacks = Bitboards.bishopAttacks(sq, occupancy);
+                    break;
+                case 'N':
+                    attacks = Bitboards.KNIGHT_ATTACKS[sq];
+                    break;
+                default:
+                    attacks = Bitboards.PAWN_ATTACKS[byWhite ? 0 : 1][sq];
+                    break;
+            }
+            if ((attacks & bit) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Writes a table: each position packed in 2 bits of result and as many bits as the longest mate needs
+    private void write(TablebaseMaterial material, short[] states, int longestMate) throws IOException {
+        int bits = 2 + (32 - Integer.numberOfLeadingZeros(longestMate));
+        Files.createDirectories(directory);
+        Path path = directory.resolve(material.name + Tablebase.EXTENSION);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(Tablebase.VERSION);
+            out.writeInt(bits);
+            out.writeInt(longestMate);
+            out.writeLong(material.size);
+
+            // Bits are written from the most significant one, entries cross byte boundaries
+            long buffer = 0;
+            int filled = 0;
+            for (short state : states) {
+                buffer = (buffer << bits) | toEntry(state);
+                filled += bits;
+                while (filled >= 8) {
+                    out.write((int) (buffer >>> (filled - 8)));
+                    filled -= 8;
+                }
+            }
+            if (filled > 0) {
+                out.write((int) (buffer << (8 - filled)));
+            }
+            out.write(new byte[8]); // A probe reads 8 bytes from the byte holding the entry
+        }
+    }
+
+    // Packs a state into a file entry: distance to mate << 2 | result (see Tablebase)
+    private static int toEntry(short state) {
+        if (state == ILLEGAL) {
+            return Tablebase.ILLEGAL;
+        } else if (state == 0 || state == DRAW) {
+            return Tablebase.DRAW;
+        } else if (state > 0) {
+            return (state << 2) | Tablebase.WIN;
+        }
+        return ((-state - 1) << 2) | Tablebase.LOSS;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java chess.TablebaseGenerator directory KQK KRK KPK KBNK... [--threads N]");
+            return;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                names.add(args[i]);
+            }
+        }
+
+        TablebaseGenerator generator = new TablebaseGenerator(Paths.get(args[0]), threads);
+        for (String name : names) {
+            generator.generate(name);
+        }
+    }
+}
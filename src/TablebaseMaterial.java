@@ -0,0 +1,217 @@
+package chess;
+
+import java.util.Arrays;
+
+// The material of an endgame table (e.g. KBNK) and the index of its positions
+// Pieces are numbered in table order: the white King, the other white pieces (Q, R, B, N, P order), the black King,
+// the other black pieces. Tables are named from the stronger side, so KPK also covers a black pawn against a lone
+// King (with the colors swapped and the board mirrored)
+// Index: side to move, then the white King square folded by symmetry, then 6 bits for the square of every other
+// piece. Without pawns the board is mirrored so the white King stands in the a1-a4-d4 triangle (10 squares); with pawns only
+// left/right mirroring is allowed, so it stands on files a-d (32 squares)
+final class TablebaseMaterial {
+    static final int MAX_PIECES = 5;
+    static final String ORDER = "KQRBNP"; // Piece letters of a table name, strongest first
+    private static final int[] VALUES = { 0, 9, 5, 3, 3, 1 };
+
+    private static final int[] PAWNLESS_KING_INDEX = new int[64];
+    private static final int[] PAWN_KING_INDEX = new int[64];
+    private static final int[] PAWNLESS_KING_SQUARES = new int[10];
+    private static final int[] PAWN_KING_SQUARES = new int[32];
+
+    static {
+        Arrays.fill(PAWNLESS_KING_INDEX, -1);
+        Arrays.fill(PAWN_KING_INDEX, -1);
+        int pawnless = 0, pawn = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int file = sq & 7, rank = 7 - (sq >> 3);
+            if (file <= 3) {
+                PAWN_KING_SQUARES[pawn] = sq;
+                PAWN_KING_INDEX[sq] = pawn++;
+                if (rank <= 3 && file <= rank) {
+                    PAWNLESS_KING_SQUARES[pawnless] = sq;
+                    PAWNLESS_KING_INDEX[sq] = pawnless++;
+                }
+            }
+        }
+    }
+
+    final String name;
+    final int count;
+    final int blackKing; // Index of the black King
+    final char[] symbols; // Symbols of the pieces (as ChessBoard, p for pawns) in table order
+    final boolean[] white;
+    final boolean pawns;
+    final long size; // Number of indexes
+
+    private final int[] kingIndex;
+    private final int[] kingSquares;
+
+    private TablebaseMaterial(String name) {
+        this.name = name;
+        count = name.length();
+        symbols = new char[count];
+        white = new boolean[count];
+        blackKing = name.indexOf('K', 1);
+        for (int i = 0; i < count; i++) {
+            symbols[i] = (name.charAt(i) == 'P') ? 'p' : name.charAt(i);
+            white[i] = i < blackKing;
+        }
+
+        pawns = name.indexOf('P') != -1;
+        kingIndex = pawns ? PAWN_KING_INDEX : PAWNLESS_KING_INDEX;
+        kingSquares = pawns ? PAWN_KING_SQUARES : PAWNLESS_KING_SQUARES;
+        size = 2L * kingSquares.length << (6 * (count - 1));
+    }
+
+    // Returns the material of a table name (e.g. KQK, KBNK, KRKP), which must be written from the stronger side
+    static TablebaseMaterial of(String name) throws ChessException {
+        int blackKing = name.indexOf('K', 1);
+        if (!name.startsWith("K") || blackKing == -1 || name.length() > MAX_PIECES) {
+            throw new ChessException("Invalid table " + name + ": expected two Kings and at most "
+                    + (MAX_PIECES - 2) + " other pieces (e.g. KQK, KBNK)");
+        }
+
+        String whiteSide = name.substring(0, blackKing), blackSide = name.substring(blackKing);
+        String canonical = getName(whiteSide, blackSide);
+        if (canonical == null || !canonical.equals(name)) {
+            throw new ChessException("Invalid table " + name + ((canonical == null) ? "" : ", use " + canonical));
+        }
+        return new TablebaseMaterial(name);
+    }
+
+    // Returns the table name of two sides (e.g. "KP" and "K" give KPK), or null if a side holds something else
+    // than a King followed by other pieces in ORDER
+    static String getName(String whiteSide, String blackSide) {
+        if (!isSide(whiteSide) || !isSide(blackSide)) {
+            return null;
+        }
+        return isSwapped(whiteSide, blackSide) ? blackSide + whiteSide : whiteSide + blackSide;
+    }
+
+    // Returns true if the table of two sides is written from Black (Black is the stronger side)
+    static boolean isSwapped(String whiteSide, String blackSide) {
+        int whiteValue = getValue(whiteSide), blackValue = getValue(blackSide);
+        if (whiteValue != blackValue) {
+            return blackValue > whiteValue;
+        }
+        return compare(blackSide, whiteSide) < 0;
+    }
+
+    // Returns the letters of pieces in ORDER (e.g. "NB" gives "BN")
+    static String sort(String pieces) {
+        char[] letters = pieces.toCharArray();
+        for (int i = 1; i < letters.length; i++) {
+            for (int j = i; j > 0 && ORDER.indexOf(letters[j]) < ORDER.indexOf(letters[j - 1]); j--) {
+                char swap = letters[j];
+                letters[j] = letters[j - 1];
+                letters[j - 1] = swap;
+            }
+        }
+        return new String(letters);
+    }
+
+    private static boolean isSide(String side) {
+        if (side.isEmpty() || side.charAt(0) != 'K') {
+            return false;
+        }
+        for (int i = 1; i < side.length(); i++) {
+            int order = ORDER.indexOf(side.charAt(i));
+            if (order < 1 || order < ORDER.indexOf(side.charAt(i - 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int getValue(String side) {
+        int value = 0;
+        for (int i = 0; i < side.length(); i++) {
+            value += VALUES[ORDER.indexOf(side.charAt(i))];
+        }
+        return value;
+    }
+
+    // Orders sides by their strongest piece first, then by their number of pieces
+    private static int compare(String a, String b) {
+        for (int i = 0; i < Math.min(a.length(), b.length()); i++) {
+            int order = ORDER.indexOf(a.charAt(i)) - ORDER.indexOf(b.charAt(i));
+            if (order != 0) {
+                return order;
+            }
+        }
+        return b.length() - a.length();
+    }
+
+    // Returns the index of a position given by the squares of the pieces in table order
+    long index(int[] squares, boolean whiteToMove) {
+        int king = squares[0];
+        int flip = ((king & 7) > 3) ? 7 : 0;
+        boolean transpose = false;
+        if (!pawns) {
+            if ((king >> 3) < 4) {
+                flip ^= 56;
+            }
+            int folded = king ^ flip;
+            transpose = (folded & 7) > 7 - (folded >> 3);
+        }
+
+        long index = (whiteToMove ? 0 : kingSquares.length) + kingIndex[transform(king, flip, transpose)];
+        for (int i = 1; i < count; i++) {
+            index = (index << 6) | transform(squares[i], flip, transpose);
+        }
+        return index;
+    }
+
+    // Returns the index of a position given as pieces in any order (symbols, colors and squares of the first count
+    // entries). The pieces are those of this table, with the colors swapped and the board mirrored if swapped is
+    // set. squares is a scratch array of at least count entries
+    long index(char[] pieceSymbols, boolean[] pieceWhite, int[] pieceSquares, boolean whiteToMove, boolean swapped,
+            int[] squares) {
+        int used = 0;
+        for (int slot = 0; slot < count; slot++) {
+            for (int p = 0; p < count; p++) {
+                if ((used & (1 << p)) == 0 && pieceSymbols[p] == symbols[slot]
+                        && (pieceWhite[p] != swapped) == white[slot]) {
+                    used |= 1 << p;
+                    squares[slot] = swapped ? pieceSquares[p] ^ 56 : pieceSquares[p];
+                    break;
+                }
+            }
+        }
+        return index(squares, whiteToMove != swapped);
+    }
+
+    // Returns the letters of the pieces of one color (e.g. "KBN"), King first and the others in ORDER
+    static String getSide(char[] pieceSymbols, boolean[] pieceWhite, int count, boolean white) {
+        StringBuilder side = new StringBuilder(count);
+        for (int p = 0; p < count; p++) {
+            if (pieceWhite[p] == white && pieceSymbols[p] != 'K') {
+                side.append((pieceSymbols[p] == 'p') ? 'P' : pieceSymbols[p]);
+            }
+        }
+        return "K" + sort(side.toString());
+    }
+
+    // Fills the squares of the pieces of an index (the white King on its folded square) and returns true if White
+    // is to move
+    boolean decode(long index, int[] squares) {
+        for (int i = count - 1; i > 0; i--) {
+            squares[i] = (int) (index & 63);
+            index >>>= 6;
+        }
+        squares[0] = kingSquares[(int) (index % kingSquares.length)];
+        return index < kingSquares.length;
+    }
+
+    // Mirrors a square (flip 7: left/right, 56: up/down) then reflects it on the a1-h8 diagonal if transpose is set
+    private static int transform(int sq, int flip, boolean transpose) {
+        sq ^= flip;
+        return transpose ? ((7 - (sq & 7)) << 3) | (7 - (sq >> 3)) : sq;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,44 @@
+package chess;
+
+/**
+ * The result of a position found in an endgame table, for the side to move,
+ * with perfect play from both sides.
+ */
+public class TablebaseResult {
+    static final TablebaseResult DRAW = new TablebaseResult(Tablebase.DRAW, 0);
+
+    private final int wdl; // Tablebase.WIN, DRAW or LOSS
+    private final int distance; // Plies to mate, 0 for draws
+
+    TablebaseResult(int wdl, int distance) {
+        this.wdl = wdl;
+        this.distance = distance;
+    }
+
+    public boolean isWin() {
+        return wdl == Tablebase.WIN;
+    }
+
+    public boolean isDraw() {
+        return wdl == Tablebase.DRAW;
+    }
+
+    public boolean isLoss() {
+        return wdl == Tablebase.LOSS;
+    }
+
+    // Returns the number of plies until mate (0 if the side to move is checkmated or the position is a draw)
+    public int getDistanceToMate() {
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        if (isDraw()) {
+            return "draw";
+        }
+        // A win in 1 ply is mate in 1, a loss in 2 plies is mated in 1
+        int moves = (distance + 1) / 2;
+        return isWin() ? "win, mate in " + moves : (distance == 0) ? "loss, checkmated" : "loss, mated in " + moves;
+    }
+}
@@ -0,0 +1,171 @@
+package chess;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Table of search results indexed by Zobrist key, shared by every thread of a search
+// The table lives outside the Java heap (direct buffers), so even several gigabytes add nothing to GC work
+// Layout: buckets of 4 entries (64 bytes, one cache line). An entry is two longs: the key XOR the data, and the data
+// NOTE: Threads read and write entries without locks. An entry written by two threads at once can end up with the
+// key word of one and the data word of the other; it then fails the XOR check and is treated as a miss
+final class TranspositionTable {
+    // Bound of a stored score
+    static final int EXACT = 0;
+    static final int LOWER = 1; // The score is at least this (the search failed high)
+    static final int UPPER = 2; // The score is at most this (the search failed low)
+
+    private static final int ENTRIES_PER_BUCKET = 4;
+    private static final int BUCKET_BYTES = 64;
+    private static final int CHUNK_BITS = 24; // 2^24 buckets (1 GB) per buffer, buffers are limited to 2 GB
+
+    // Data word: bits 0-15 move, 16-31 score, 32-39 depth, 40-41 bound, 42-49 age, 63 always set (0 is empty)
+    private static final long USED = 1L << 63;
+
+    // Atomic (opaque) access to the longs of a buffer, so a word is never torn
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    private final ByteBuffer[] chunks;
+    private final long bucketMask;
+    private volatile int age; // Incremented for every new search, older entries are replaced first
+
+    // Creates a table using about the given number of megabytes (rounded down to a power of 2 buckets)
+    TranspositionTable(int sizeMb) {
+        long buckets = Long.highestOneBit(Math.max(1, ((long) sizeMb << 20) / BUCKET_BYTES));
+        long bucketsPerChunk = Math.min(buckets, 1L << CHUNK_BITS);
+
+        chunks = new ByteBuffer[(int) (buckets / bucketsPerChunk)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect((int) (bucketsPerChunk * BUCKET_BYTES))
+                    .order(ByteOrder.nativeOrder());
+        }
+        bucketMask = buckets - 1;
+    }
+
+    // Starts a new search: entries of earlier searches become the first to be replaced
+    void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    // Returns the data stored for the key (read with move, score, depth and bound), or 0 if there is none
+    long probe(long key) {
+        ByteBuffer chunk = getChunk(key);
+        int offset = getOffset(key);
+
+        for (int i = 0; i < ENTRIES_PER_BUCKET; i++) {
+            int entry = offset + i * 16;
+            long data = (long) LONGS.getOpaque(chunk, entry + 8);
+            long check = (long) LONGS.getOpaque(chunk, entry);
+            if (data != 0 && (check ^ data) == key) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    // Stores a result. The entry of the same position is replaced unless it holds a deeper result of the current
+    // search, otherwise the entry with the oldest and shallowest result in the bucket is replaced
+    void store(long key, int move, int score, int depth, int bound) {
+        ByteBuffer chunk = getChunk(key);
+        int offset = getOffset(key);
+        int currentAge = age;
+
+        int target = offset;
+        int worstValue = Integer.MAX_VALUE;
+        for (int i = 0; i < ENTRIES_PER_BUCKET; i++) {
+            int entry = offset + i * 16;
+            long data = (long) LONGS.getOpaque(chunk, entry + 8);
+            long check = (long) LONGS.getOpaque(chunk, entry);
+
+            if (data == 0) {
+                if (worstValue > Integer.MIN_VALUE) {
+                    target = entry;
+                    worstValue = Integer.MIN_VALUE;
+                }
+                continue;
+            }
+
+            if ((check ^ data) == key) {
+                if (depth < depth(data) && age(data) == currentAge && bound != EXACT) {
+                    return;
+                }
+                // Keep the best move of the previous search if this one has none (failed low)
+                if (move == Move.NONE) {
+                    move = move(data);
+                }
+                target = entry;
+                break;
+            }
+
+            // Entries of older searches count as shallower
+            int value = depth(data) - 8 * ((currentAge - age(data)) & 0xFF);
+            if (value < worstValue) {
+                target = entry;
+                worstValue = value;
+            }
+        }
+
+        long data = USED | (move & 0xFFFFL) | ((score & 0xFFFFL) << 16) | ((long) (depth & 0xFF) << 32)
+                | ((long) bound << 40) | ((long) currentAge << 42);
+        LONGS.setOpaque(chunk, target, key ^ data);
+        LONGS.setOpaque(chunk, target + 8, data);
+    }
+
+    void clear() {
+        for (ByteBuffer chunk : chunks) {
+            for (int i = 0; i < chunk.capacity(); i += 8) {
+                LONGS.setOpaque(chunk, i, 0L);
+            }
+        }
+    }
+
+    static int move(long data) {
+        return (int) (data & 0xFFFF);
+    }
+
+    static int score(long data) {
+        return (short) (data >>> 16);
+    }
+
+    static int depth(long data) {
+        return (int) ((data >>> 32) & 0xFF);
+    }
+
+    static int bound(long data) {
+        return (int) ((data >>> 40) & 3);
+    }
+
+    private static int age(long data) {
+        return (int) ((data >>> 42) & 0xFF);
+    }
+
+    private ByteBuffer getChunk(long key) {
+        return chunks[(int) ((key & bucketMask) >>> CHUNK_BITS)];
+    }
+
+    private int getOffset(long key) {
+        return (int) (key & bucketMask & ((1L << CHUNK_BITS) - 1)) * BUCKET_BYTES;
+    }
+
+    // Converts a score to be stored: mate scores count from this position instead of the root
+    static int toStored(int score, int ply) {
+        if (score >= Search.MATE - Search.MAX_PLY) {
+            return score + ply;
+        } else if (score <= -Search.MATE + Search.MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    // Converts a stored score back to a score from the root
+    static int fromStored(int score, int ply) {
+        if (score >= Search.MATE - Search.MAX_PLY) {
+            return score - ply;
+        } else if (score <= -Search.MATE + Search.MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+}
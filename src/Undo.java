@@ -0,0 +1,34 @@
+package chess;
+
+// Everything Position.unmakeMove needs to take back one move
+// NOTE: Records are kept in a stack inside Position and reused, so making and unmaking moves does not allocate
+final class Undo {
+    // The move that was made
+    int sRow, sCol, eRow, eCol;
+
+    // The captured piece and where it stood (differs from the end square for en passant)
+    ChessPiece captured;
+    int capturedRow, capturedCol;
+
+    // The pawn that was replaced by a promotion (null if the move was not a promotion)
+    ChessPiece promotedPawn;
+
+    // The moved flag of the moving piece before the move (castling state)
+    boolean pieceMoved;
+
+    // Columns of the rook during castling (-1 if the move was not castling)
+    int rookSCol, rookECol;
+
+    // En passant data before the move
+    int lastSRow, lastERow, lastECol;
+
+    // Square of the moving side's King before the move
+    int kingRow, kingCol;
+
+    // Fifty-move counter before the move
+    int halfmoveClock;
+
+    // Attack maps of the position before the move (only kept if they had been computed)
+    boolean attacksValid;
+    long whiteAttacks, blackAttacks, checkers, pinned;
+}
@@ -0,0 +1,260 @@
+package chess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// The server side of a WebSocket connection (RFC 6455) after the HTTP upgrade (see GameServer)
+// Only text messages are exchanged; pings are answered and fragmented messages are joined
+// Messages are read by the thread of the connection. Frames sent are queued and written by a task started on the
+// executor while frames are waiting, so a sender (a move of another connection, the idle game cleaner) never
+// blocks on a slow client, and an idle connection holds no thread besides its reader. A client that lets
+// MAX_QUEUED_FRAMES pile up is disconnected instead
+final class WebSocket {
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    static final int MAX_MESSAGE_BYTES = 64 * 1024;
+    static final int MAX_QUEUED_FRAMES = 64;
+    private static final long DRAIN_MILLIS = 1000; // Given to the writes in progress on a close
+
+    private static final int TEXT = 0x1;
+    private static final int CLOSE = 0x8;
+    private static final int PING = 0x9;
+    private static final int PONG = 0xA;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Executor executor;
+    private final CountDownLatch ended = new CountDownLatch(1); // Released when the socket is closed
+
+    // Guarded by this
+    private final ArrayDeque<byte[]> frames = new ArrayDeque<>(); // Frames not taken by the writing task yet
+    private boolean writing; // True while a writing task is started
+    private boolean closed; // Set once the close frame is queued or the connection dropped
+
+    // Creates the WebSocket of an upgraded connection, which writes its frames with tasks of the executor
+    WebSocket(Socket socket, InputStream in, OutputStream out, Executor executor) {
+        this.socket = socket;
+        this.in = in;
+        this.out = out;
+        this.executor = executor;
+    }
+
+    // Returns the Sec-WebSocket-Accept value answering a Sec-WebSocket-Key
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key.trim() + GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e); // Every JDK has it
+        }
+    }
+
+    // Returns the next text message, or null when the client closed the connection
+    String readMessage() throws IOException {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        while (true) {
+            int first = readByte(), second = readByte();
+            boolean fin = (first & 0x80) != 0;
+            int opcode = first & 0x0F;
+
+            long length = second & 0x7F;
+            if (length == 126) {
+                length = (readByte() << 8) | readByte();
+            } else if (length == 127) {
+                length = 0;
+                for (int i = 0; i < 8; i++) {
+                    length = (length << 8) | readByte();
+                }
+            }
+            // Client frames must be masked, and control frames (close, ping, pong) are whole and short
+            boolean control = (opcode & 0x8) != 0;
+            if ((second & 0x80) == 0 || length < 0 || (control && (!fin || length > 125))) {
+                close(1002);
+                return null;
+            } else if (message.size() + length > MAX_MESSAGE_BYTES) {
+                close(1009);
+                return null;
+            }
+
+            byte[] mask = { (byte) readByte(), (byte) readByte(), (byte) readByte(), (byte) readByte() };
+            byte[] payload = in.readNBytes((int) length);
+            if (payload.length < length) {
+                throw new EOFException();
+            }
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+
+            if (opcode == CLOSE) {
+                close(1000);
+                return null;
+            } else if (opcode == PING) {
+                send(PONG, payload);
+            } else if (opcode != PONG) {
+                // Text frame or continuation (binary frames are read as text)
+                message.write(payload);
+                if (fin) {
+                    return message.toString(StandardCharsets.UTF_8);
+                }
+            }
+        }
+    }
+
+    // Queues a text message without blocking; returns false if the connection is closed or was dropped because
+    // the client fell behind
+    boolean sendText(String text) {
+        return send(TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Queues a close frame with a status code (1000 normal, 1001 going away, 1002 protocol error, 1009 message too
+    // big), once; the writer closes the socket after sending it. Does not block
+    synchronized void close(int status) {
+        send(CLOSE, new byte[] { (byte) (status >> 8), (byte) status });
+        closed = true;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    // Lets the queued frames be written (for a little while), then closes the socket
+    // Called by the connection thread when it stops reading
+    void finish() {
+        synchronized (this) {
+            closed = true;
+            if (!writing) {
+                end();
+            }
+        }
+        try {
+            ended.await(DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drop();
+    }
+
+    private synchronized boolean send(int opcode, byte[] payload) {
+        if (closed) {
+            return false;
+        }
+        if (frames.size() >= MAX_QUEUED_FRAMES) {
+            drop(); // The client does not read fast enough
+            return false;
+        }
+
+        frames.add(frame(opcode, payload));
+        if (!writing) {
+            writing = true;
+            try {
+                executor.execute(this::writeFrames);
+            } catch (RejectedExecutionException e) {
+                end(); // The server is closing
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Closes the connection at once, discarding the queued frames (Socket.close does not wait for the client, and
+    // makes a blocked write of the writing task fail)
+    private synchronized void drop() {
+        closed = true;
+        end();
+    }
+
+    // Closes the socket, once (called holding the lock)
+    private void end() {
+        closed = true;
+        frames.clear();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Closed anyway
+        }
+        ended.countDown();
+    }
+
+    // Writes the queued frames, in batches with one flush each, until none are left, the close frame is written
+    // or a write fails
+    private void writeFrames() {
+        while (true) {
+            byte[][] batch;
+            synchronized (this) {
+                if (frames.isEmpty()) {
+                    writing = false;
+                    if (closed) {
+                        end(); // Nothing more can be queued
+                    }
+                    return;
+                }
+                batch = frames.toArray(new byte[0][]);
+                frames.clear();
+            }
+
+            boolean ending = false;
+            try {
+                for (byte[] frame : batch) {
+                    out.write(frame);
+                    if ((frame[0] & 0x0F) == CLOSE) {
+                        ending = true;
+                        break;
+                    }
+                }
+                out.flush();
+            } catch (IOException e) {
+                ending = true; // The client is gone or was dropped
+            }
+            if (ending) {
+                synchronized (this) {
+                    writing = false;
+                    end();
+                }
+                return;
+            }
+        }
+    }
+
+    // Returns a server frame (not masked) holding a whole message
+    private static byte[] frame(int opcode, byte[] payload) {
+        int header = (payload.length < 126) ? 2 : (payload.length < 65536) ? 4 : 10;
+        byte[] frame = new byte[header + payload.length];
+        frame[0] = (byte) (0x80 | opcode);
+        if (payload.length < 126) {
+            frame[1] = (byte) payload.length;
+        } else if (payload.length < 65536) {
+            frame[1] = 126;
+            frame[2] = (byte) (payload.length >> 8);
+            frame[3] = (byte) payload.length;
+        } else {
+            frame[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                frame[2 + i] = (byte) ((long) payload.length >> (56 - 8 * i));
+            }
+        }
+        System.arraycopy(payload, 0, frame, header, payload.length);
+        return frame;
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException();
+        }
+        return b;
+    }
+}
@@ -0,0 +1,46 @@
+package chess;
+
+// Random 64-bit keys used to hash positions (Zobrist hashing)
+// The key of a position is the XOR of the keys of its pieces, castling rights, en passant file and side to move
+// NOTE: The keys come from a fixed seed so the same position has the same key on every run (keys are saved in files)
+final class Zobrist {
+    static final long[][] PIECES = new long[12][64]; // [ChessBoard piece index][square]
+    static final long[] CASTLING = new long[16]; // [castling rights, see Position.getCastlingRights]
+    static final long[] EN_PASSANT = new long[8]; // [column]
+    static final long BLACK_TO_MOVE;
+
+    static {
+        long seed = 0x2F1C0A6E9D3B7845L;
+
+        for (long[] keys : PIECES) {
+            for (int sq = 0; sq < keys.length; sq++) {
+                seed += 0x9E3779B97F4A7C15L;
+                keys[sq] = mix(seed);
+            }
+        }
+
+        // No castling rights hashes to 0 so the key does not change once both sides lost them
+        for (int i = 1; i < CASTLING.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            CASTLING[i] = mix(seed);
+        }
+
+        for (int i = 0; i < EN_PASSANT.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            EN_PASSANT[i] = mix(seed);
+        }
+
+        seed += 0x9E3779B97F4A7C15L;
+        BLACK_TO_MOVE = mix(seed);
+    }
+
+    private Zobrist() {
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}